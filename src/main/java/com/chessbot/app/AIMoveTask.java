@@ -1,22 +1,77 @@
 package com.chessbot.app;
 
 import javafx.concurrent.Task;
+import chesspresso.move.Move;
 import chesspresso.position.Position;
 
 public class AIMoveTask extends Task<Short> {
-	
+
 	private Position position = null;
 	private ChessAI ai;
-	
+	private final SearchStop stop = new SearchStop();
+
 	public AIMoveTask(ChessAI ai, Position p) {
 		super();
 		position = p;
-		this.ai = ai;	
+		this.ai = ai;
 	}
 
+	// while searching, the value is the best move so far and the message describes
+	// the last completed iteration. a Task only hands the latest of each to the FX
+	// thread, so however fast the iterations come the UI sees one update per pulse
 	@Override
 	protected Short call() throws Exception {
-		return ai.getMove(position);
+		updateMessage("ChessBot computing best move...");
+		ai.setSearchListener(this::publish);
+		try {
+			return ai.getMove(position, stop);
+		} finally {
+			ai.setSearchListener(null);
+		}
+	}
+
+	// called on the engine thread after each iteration
+	private void publish(SearchProgress progress) {
+		updateValue(progress.getBestMove());
+		updateMessage(describe(progress));
+	}
+
+	static String describe(SearchProgress progress) {
+		StringBuilder text = new StringBuilder();
+		text.append("Depth ").append(progress.getDepth());
+		text.append("   Score ").append(describeScore(progress.getScore()));
+		text.append("   Nodes ").append(progress.getNodes());
+		text.append("   NPS ").append(progress.getNodesPerSecond());
+		text.append("   PV");
+		short[] line = progress.getPrincipalVariation();
+		if (line.length == 0) {
+			line = new short[] { progress.getBestMove() };
+		}
+		for (short move : line) {
+			text.append(' ').append(Move.getString(move));
+		}
+		return text.toString();
+	}
+
+	// in pawns for the side to move, or the moves to a forced mate
+	private static String describeScore(int score) {
+		if (Math.abs(score) >= KillerAI.MATE_BOUND) {
+			int moves = (KillerAI.MATE - Math.abs(score) + 1) / 2;
+			return (score > 0 ? "mate in " : "mated in ") + moves;
+		}
+		return String.format("%+.2f", score / 100.0);
+	}
+
+	// the search returns with its best move so far, even when the task is still
+	// queued behind another one on the engine thread
+	public void stopSearch() {
+		stop.stop();
 	}
-	
+
+	// a cancelled task stops the search rather than leaving it running
+	@Override
+	protected void cancelled() {
+		stop.stop();
+	}
+
 }
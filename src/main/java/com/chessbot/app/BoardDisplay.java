@@ -0,0 +1,13 @@
+package com.chessbot.app;
+
+// the board the client plays on, either BoardView with a node for every square
+// and piece, or CanvasBoardView drawing everything on one canvas
+interface BoardDisplay {
+
+	// show the move and make it in the game, false if it isn't legal
+	public boolean doMove(short move);
+
+	// run the action once the last move has finished animating
+	public void whenReady(Runnable action);
+
+}
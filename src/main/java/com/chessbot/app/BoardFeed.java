@@ -0,0 +1,42 @@
+package com.chessbot.app;
+
+import chesspresso.position.Position;
+
+// the latest state of a game for a viewer on another thread. the game's thread
+// publishes a copy after each move and the viewer takes the newest copy when it
+// draws, so neither ever waits for the other and moves between frames are skipped
+public class BoardFeed {
+
+	private volatile Frame frame;
+
+	public void publish(Position position, String status){
+		frame = new Frame(position, status);
+	}
+
+	// the newest frame, or null before the first is published
+	public Frame get(){
+		return frame;
+	}
+
+	public static class Frame {
+
+		private int[] stones;
+		private short lastMove;
+		private String status;
+
+		private Frame(Position position, String status){
+			this.stones = new int[64];
+			for(int sqi = 0; sqi < 64; sqi++){
+				stones[sqi] = position.getStone(sqi);
+			}
+			this.lastMove = position.getLastShortMove();
+			this.status = status;
+		}
+
+		public int[] getStones(){ return stones; }
+		public short getLastMove(){ return lastMove; }
+		public String getStatus(){ return status; }
+
+	}
+
+}
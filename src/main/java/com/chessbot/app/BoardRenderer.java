@@ -0,0 +1,156 @@
+package com.chessbot.app;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// draws a chess board into one area of a canvas, and remembers what it drew on
+// every square so that each render only repaints the squares whose piece or
+// highlight changed since the last one. a canvas can hold any number of them
+public class BoardRenderer {
+
+	// the size of the font used to draw pieces, relative to the size of the square
+	private static final double FONT_SCALE = .75;
+
+	private static final Color LIGHT = Color.WHITE;
+	private static final Color DARK = Color.LIGHTGRAY;
+	private static final Color LIGHT_HIGHLIGHT = Color.rgb(246, 246, 150);
+	private static final Color DARK_HIGHLIGHT = Color.rgb(210, 210, 110);
+
+	// chess pieces in unicode, indexed by the stone plus 6 so white comes first
+	private static final String[] PIECES = {
+		"\u2654", "\u2659", "\u2655", "\u2656", "\u2657", "\u2658", "",
+		"\u265E", "\u265D", "\u265C", "\u265B", "\u265F", "\u265A"
+	};
+
+	private GraphicsContext graphics;
+	private double left, top, square;
+	private boolean coordinates;
+	private Font pieceFont, coordinateFont;
+
+	// what each square should show and what it shows now, and the squares of the
+	// last move, which are highlighted. the first render paints every square
+	private int[] stones, drawn;
+	private long highlight, drawnHighlight;
+	private long dirty;
+
+	public BoardRenderer(GraphicsContext graphics, double left, double top, double square, boolean coordinates){
+		this.graphics = graphics;
+		this.left = left;
+		this.top = top;
+		this.square = square;
+		this.coordinates = coordinates;
+		this.pieceFont = Font.font("Verdana", (int) (square * FONT_SCALE));
+		this.coordinateFont = Font.font(Math.max(square / 6, 8));
+		this.stones = new int[64];
+		this.drawn = new int[64];
+		invalidateAll();
+	}
+
+	public double getSquareSize(){ return square; }
+	public double getWidth(){ return 8 * square; }
+
+	public void setPosition(Position position){
+		for(int sqi = 0; sqi < 64; sqi++){
+			stones[sqi] = position.getStone(sqi);
+		}
+	}
+
+	public void setStones(int[] stones){
+		System.arraycopy(stones, 0, this.stones, 0, 64);
+	}
+
+	// show a square as something else than the position says, like empty while a piece moves onto it
+	public void setStone(int sqi, int stone){
+		stones[sqi] = stone;
+	}
+
+	// highlight the squares of move, or none with 0
+	public void setLastMove(short move){
+		highlight = move == 0 ? 0 : (1L << Move.getFromSqi(move)) | (1L << Move.getToSqi(move));
+	}
+
+	// paint the squares under an area of the canvas again at the next render, for
+	// whatever was drawn over them
+	public void invalidate(double x, double y, double width, double height){
+		int fromCol = (int) Math.max(Math.floor((x - left) / square), 0);
+		int toCol = (int) Math.min(Math.floor((x + width - left - 1e-9) / square), 7);
+		int fromRow = (int) Math.max(Math.floor((y - top) / square), 0);
+		int toRow = (int) Math.min(Math.floor((y + height - top - 1e-9) / square), 7);
+		for(int col = fromCol; col <= toCol; col++){
+			for(int row = fromRow; row <= toRow; row++){
+				dirty |= 1L << Chess.coorToSqi(col, 7 - row);
+			}
+		}
+	}
+
+	public void invalidateAll(){
+		dirty = -1L;
+	}
+
+	// repaint what changed, returns the number of squares painted
+	public int render(){
+		long changed = dirty | highlight ^ drawnHighlight;
+		for(int sqi = 0; sqi < 64; sqi++){
+			if(stones[sqi] != drawn[sqi]){
+				changed |= 1L << sqi;
+			}
+		}
+
+		int painted = 0;
+		for(long squares = changed; squares != 0; squares &= squares - 1){
+			drawSquare(Long.numberOfTrailingZeros(squares));
+			painted++;
+		}
+		dirty = 0;
+		drawnHighlight = highlight;
+		return painted;
+	}
+
+	private void drawSquare(int sqi){
+		int col = Chess.sqiToCol(sqi);
+		int row = Chess.sqiToRow(sqi);
+		double x = getX(sqi), y = getY(sqi);
+
+		boolean light = (col + row) % 2 == 1;
+		boolean highlighted = (highlight & (1L << sqi)) != 0;
+		graphics.setFill(highlighted ? (light ? LIGHT_HIGHLIGHT : DARK_HIGHLIGHT) : (light ? LIGHT : DARK));
+		graphics.fillRect(x, y, square, square);
+
+		graphics.setFill(Color.BLACK);
+		if(coordinates){
+			graphics.setFont(coordinateFont);
+			graphics.setTextAlign(TextAlignment.LEFT);
+			graphics.setTextBaseline(VPos.TOP);
+			graphics.fillText("" + Chess.colToChar(col) + Chess.rowToChar(row), x + 1, y + 1);
+		}
+		if(stones[sqi] != Chess.NO_STONE){
+			drawPiece(stones[sqi], x, y);
+		}
+		drawn[sqi] = stones[sqi];
+	}
+
+	// draw a piece with its square's top left corner at x, y, also for pieces
+	// between squares while they move
+	public void drawPiece(int stone, double x, double y){
+		graphics.setFill(Color.BLACK);
+		graphics.setFont(pieceFont);
+		graphics.setTextAlign(TextAlignment.CENTER);
+		graphics.setTextBaseline(VPos.CENTER);
+		graphics.fillText(PIECES[stone + 6], x + square / 2, y + square / 2);
+	}
+
+	public double getX(int sqi){
+		return left + Chess.sqiToCol(sqi) * square;
+	}
+
+	public double getY(int sqi){
+		return top + (7 - Chess.sqiToRow(sqi)) * square;
+	}
+
+}
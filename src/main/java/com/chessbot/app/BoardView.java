@@ -4,7 +4,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import javafx.scene.control.TextArea;
 import javafx.animation.FadeTransition;
 import javafx.animation.Timeline;
 import javafx.animation.TranslateTransition;
@@ -22,7 +21,7 @@ import javafx.util.Duration;
 import chesspresso.Chess;
 import chesspresso.move.Move;
 
-public class BoardView extends Group {
+public class BoardView extends Group implements BoardDisplay {
 	
 	// the size of the font used to draw pieces,
 	//   relative to the size of the square
@@ -30,9 +29,10 @@ public class BoardView extends Group {
 	
 	private int pixelsPerSquare;
 	private ChessGame game;
-	private TextArea logView;
+	private LogView logView;
 
 	private int numCurrentAnimations;
+	private Runnable onReady;
 
 	private Label[] pieceLabels; // an array of Pieces sorted by square index
 
@@ -56,7 +56,7 @@ public class BoardView extends Group {
 		unicodePiece = Collections.unmodifiableMap(aMap);
 	}
 
-	public BoardView(TextArea logView, ChessGame game, int pixelsPerSquare) {
+	public BoardView(LogView logView, ChessGame game, int pixelsPerSquare) {
 
 		pieceLabels = new Label[64];
 
@@ -133,7 +133,7 @@ public class BoardView extends Group {
 	}
 	
 	private void log(String text){
-		logView.appendText(text + "\n");
+		logView.log(text);
 	}
 
 	public boolean doMove(short move) {
@@ -270,6 +270,11 @@ public class BoardView extends Group {
 		   @Override
 		    public void handle(ActionEvent event) {
 		        numCurrentAnimations--;
+		        if (ready() && onReady != null) {
+		        	Runnable action = onReady;
+		        	onReady = null;
+		        	action.run();
+		        }
 		    }
 	}
 	
@@ -279,4 +284,14 @@ public class BoardView extends Group {
 		
 	}
 	
+	// run the action once the board is ready, right away if it already is
+	public void whenReady(Runnable action) {
+		if (ready()) {
+			action.run();
+		}
+		else {
+			onReady = action;
+		}
+	}
+	
 }
@@ -0,0 +1,136 @@
+package com.chessbot.app;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import chesspresso.Chess;
+import chesspresso.move.Move;
+
+// the client's board drawn on a single canvas instead of a node per square and
+// piece. only the squares that change are painted again, and while a piece
+// slides to its square each frame repaints just the squares it passed over
+public class CanvasBoardView extends Canvas implements BoardDisplay {
+
+	private static final long ANIMATION_NANOS = 1000000000L;
+
+	private ChessGame game;
+	private LogView logView;
+	private BoardRenderer board;
+	private AnimationTimer animation;
+	private Runnable onReady;
+
+	// the pieces sliding, at most a king and its rook, and where each was last drawn
+	private int[] slidingStones, slidingFrom, slidingTo;
+	private double[] drawnX, drawnY;
+	private int sliding;
+	private long animationStart;
+
+	public CanvasBoardView(LogView logView, ChessGame game, int pixelsPerSquare){
+		super(8 * pixelsPerSquare, 8 * pixelsPerSquare);
+		this.game = game;
+		this.logView = logView;
+		this.board = new BoardRenderer(getGraphicsContext2D(), 0, 0, pixelsPerSquare, true);
+		this.slidingStones = new int[2];
+		this.slidingFrom = new int[2];
+		this.slidingTo = new int[2];
+		this.drawnX = new double[2];
+		this.drawnY = new double[2];
+
+		board.setPosition(game.position);
+		board.render();
+
+		animation = new AnimationTimer(){
+			@Override
+			public void handle(long now){
+				frame(now);
+			}
+		};
+	}
+
+	public boolean doMove(short move){
+		if(move == 0){
+			System.out.println("Illegal move attempted.");
+			logView.log("Illegal move attempted.");
+			return false;
+		}
+
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+		sliding = 0;
+		slide(fromSqi, toSqi);
+
+		// castling moves the rook too, from its corner to beside the king
+		if(Move.isShortCastle(move) || Move.isLongCastle(move)){
+			int row = Chess.sqiToRow(fromSqi);
+			boolean shortCastle = Move.isShortCastle(move);
+			slide(Chess.coorToSqi(shortCastle ? 7 : 0, row), Chess.coorToSqi(shortCastle ? 5 : 3, row));
+		}
+
+		game.doMove(move);
+
+		// the rest of the board shows the new position right away, with the
+		// squares the pieces are moving to empty until they get there
+		board.setPosition(game.position);
+		board.setLastMove(move);
+		for(int i = 0; i < sliding; i++){
+			// a promoted pawn arrives as its new piece
+			slidingStones[i] = game.position.getStone(slidingTo[i]);
+			board.setStone(slidingTo[i], Chess.NO_STONE);
+			drawnX[i] = board.getX(slidingFrom[i]);
+			drawnY[i] = board.getY(slidingFrom[i]);
+		}
+		animationStart = System.nanoTime();
+		animation.start();
+		return true;
+	}
+
+	private void slide(int fromSqi, int toSqi){
+		slidingFrom[sliding] = fromSqi;
+		slidingTo[sliding] = toSqi;
+		sliding++;
+	}
+
+	private void frame(long now){
+		double progress = Math.min((double) (now - animationStart) / ANIMATION_NANOS, 1);
+		double size = board.getSquareSize();
+
+		// paint over where the pieces were drawn in the last frame
+		for(int i = 0; i < sliding; i++){
+			board.invalidate(drawnX[i], drawnY[i], size, size);
+		}
+
+		if(progress >= 1){
+			animation.stop();
+			sliding = 0;
+			board.setPosition(game.position);
+			board.render();
+			if(onReady != null){
+				Runnable action = onReady;
+				onReady = null;
+				action.run();
+			}
+			return;
+		}
+
+		board.render();
+		for(int i = 0; i < sliding; i++){
+			drawnX[i] = board.getX(slidingFrom[i]) + (board.getX(slidingTo[i]) - board.getX(slidingFrom[i])) * progress;
+			drawnY[i] = board.getY(slidingFrom[i]) + (board.getY(slidingTo[i]) - board.getY(slidingFrom[i])) * progress;
+			board.drawPiece(slidingStones[i], drawnX[i], drawnY[i]);
+		}
+	}
+
+	public boolean ready(){
+		return sliding == 0;
+	}
+
+	// run the action once the board is ready, right away if it already is
+	public void whenReady(Runnable action){
+		if(ready()){
+			action.run();
+		}
+		else{
+			onReady = action;
+		}
+	}
+
+}
@@ -4,4 +4,18 @@ import chesspresso.position.Position;
 
 public interface ChessAI {
 	public short getMove(Position position);
+	
+	// search until stop is set, which the caller may do at any time, also before
+	// the search has started. engines that can't be interrupted ignore it
+	public default short getMove(Position position, SearchStop stop) {
+		return getMove(position);
+	}
+	
+	// finish the search in progress as soon as possible with the best move found
+	// so far, engines that can't be interrupted just run to the end
+	public default void stop() {}
+	
+	// engines that search in iterations report each one to the listener, the
+	// others never call it
+	public default void setSearchListener(SearchListener listener) {}
 }
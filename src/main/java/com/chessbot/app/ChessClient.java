@@ -1,35 +1,45 @@
 package com.chessbot.app;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.concurrent.Worker;
-import javafx.concurrent.Worker.State;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.control.TextArea;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 import chesspresso.Chess;
 import chesspresso.position.Position;
 
 public class ChessClient extends Application {
 
 	private static final int PIXELS_PER_SQUARE = 64;
+	private static final long WARM_UP_MILLIS = 2000;
+	private static final int LOG_MESSAGES = 1000;
+	private static final long NETWORK_MOVE_MILLIS = 5000;
 	private static final String welcomeMessage = "Welcome to the ChessBot Engine.  Moves can be made using algebraic notation;"
 			+ " for example the command c2c3 would move the piece at c2 to c3.  \n";
 
 	TextField commandField;
-	TextArea logArea;
+	LogView logArea;
+
+	// the progress of the engine's search, and a button to make it move right away
+	Label statusLabel;
+	Button moveNowButton;
 
-	BoardView boardView;
+	BoardDisplay boardView;
 	ChessGame game;
 	// RandomMoveSource[] playerMoveSources;
 
@@ -47,7 +57,7 @@ public class ChessClient extends Application {
 		game = new ChessGame();
 
 		// build the text area for giving log info to user
-		logArea = new TextArea();
+		logArea = new LogView(LOG_MESSAGES);
 		// logArea.setPrefColumnCount(50);
 		logArea.setPrefRowCount(8);
 		logArea.setEditable(false);
@@ -55,8 +65,26 @@ public class ChessClient extends Application {
 		logArea.setFocusTraversable(false);
 		log(welcomeMessage);
 		
-		// build the board
-		boardView = new BoardView(logArea, game, PIXELS_PER_SQUARE);
+		// build the board, drawn on a single canvas with --canvas
+		Node boardNode;
+		if (getParameters().getRaw().contains("--canvas")) {
+			CanvasBoardView canvasBoard = new CanvasBoardView(logArea, game, PIXELS_PER_SQUARE);
+			boardView = canvasBoard;
+			boardNode = canvasBoard;
+		} else {
+			BoardView nodeBoard = new BoardView(logArea, game, PIXELS_PER_SQUARE);
+			boardView = nodeBoard;
+			boardNode = nodeBoard;
+		}
+
+		// build the search status panel, the button is only enabled while an engine thinks
+		statusLabel = new Label();
+		moveNowButton = new Button("Move now");
+		moveNowButton.setDisable(true);
+		moveNowButton.setFocusTraversable(false);
+		moveNowButton.setOnAction(event -> moveMaker[game.position.getToPlay()].stop());
+		HBox statusPanel = new HBox(10, moveNowButton, statusLabel);
+		statusPanel.setAlignment(Pos.CENTER_LEFT);
 
 		// build the command entry text field
 		commandField = new TextField();
@@ -74,14 +102,17 @@ public class ChessClient extends Application {
 		// from a server, depending on which type is used.
 		moveMaker = new MoveMaker[2];
 
-		moveMaker[Chess.BLACK] = new AIMoveMaker(new KillerAI(7, logArea));
+		moveMaker[Chess.BLACK] = engineMoveMaker();
 		moveMaker[Chess.WHITE] = new TextFieldMoveMaker();
 
 		// moveMaker[Chess.WHITE] = new AIMoveMaker(new TransAI(20));
 		// moveMaker[Chess.BLACK] = new TextFieldMoveMaker();
 
+		// for forced mate positions, prove the mate and fall back on KillerAI otherwise
+		// moveMaker[Chess.WHITE] = new AIMoveMaker(new ProofNumberAI(6, 256, new KillerAI(7, this::log)));
+
 		VBox vb = new VBox();
-		vb.getChildren().addAll(boardView, logArea, commandField);
+		vb.getChildren().addAll(boardNode, statusPanel, logArea, commandField);
 		vb.setSpacing(10);
 		vb.setPadding(new Insets(10, 10, 10, 10));
 
@@ -93,123 +124,112 @@ public class ChessClient extends Application {
 												// 600));
 		primaryStage.show();
 
-		// sets the game world's game loop (Timeline)
-		Timeline timeline = new Timeline(1.0);
-		timeline.setCycleCount(Timeline.INDEFINITE);
-		timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(.05), new GameHandler(timeline)));
-		timeline.playFromStart();
-		timeline.playFromStart();
+		// the game is driven by the move makers, each finished move starts the next
+		requestMove();
 
 		// moveMaker = new AIMoveMaker(new RandomAI());
 
 	}
 
+	// the engine of the GameServer given with --connect host:port, or a local one
+	private MoveMaker engineMoveMaker() {
+		List<String> args = getParameters().getRaw();
+		int option = args.indexOf("--connect");
+		if (option >= 0 && option + 1 < args.size()) {
+			String address = args.get(option + 1);
+			int colon = address.lastIndexOf(':');
+			try {
+				String host = address.substring(0, colon);
+				int port = Integer.parseInt(address.substring(colon + 1));
+				NetworkMoveMaker remote = new NetworkMoveMaker(host, port, NETWORK_MOVE_MILLIS);
+				log("Playing the engine at " + address + "\n");
+				return new RemoteMoveMaker(remote);
+			} catch (IOException | RuntimeException e) {
+				log("Could not connect to " + address + ", playing the local engine: " + e.getMessage() + "\n");
+			}
+		}
+		return new AIMoveMaker(new KillerAI(7, this::log));
+	}
+
+	// safe from any thread, the log view batches the messages onto the FX thread
 	private void log(String logText) {
-		Platform.runLater(() -> logArea.appendText(logText + "\n"));
+		logArea.log(logText);
 	}
 
-	// As time passes, handle the state of the game
-	private class GameHandler implements EventHandler<ActionEvent> {
-		
-		private Timeline t;
-		
-		public GameHandler(Timeline t){
-			super();
-			this.t = t;
-		}
-		
-		@Override
-		public void handle(ActionEvent e) {
-			// System.out.println("timer fired");
-
-			// System.out.println(boardView.ready());
-			// setting activeMoveSource to null will cause a new one to be
-			// created:
-
-			MoveMaker mover = moveMaker[game.position.getToPlay()];
-			
-			if (game.position.isTerminal()) {
-				log("Game Over\n");
-				if (game.position.isStaleMate()){
-					log("Stalemate");
-				}
-				else if (game.position.isMate()){
-					int loser = game.position.getToPlay();
-					String color = loser == 1 ? "Black" : "White"; 
-					log("Checkmate on " + color);
-				}
-				else{
-					log("Terminal state for unknown reasons.");
-				}
-				t.stop();
+	// ask the player whose turn it is for a move, unless the game is over
+	private void requestMove() {
+		if (game.position.isTerminal()) {
+			log("Game Over\n");
+			if (game.position.isStaleMate()){
+				log("Stalemate");
 			}
-
-			if (mover.getState() == Worker.State.READY) {
-				mover.start(game.position);
-			} else if (mover.getState() == Worker.State.SUCCEEDED && boardView.ready()) {
-				short move = mover.getMove();
-				boardView.doMove(move);
-				System.gc();
-				mover.reset();
+			else if (game.position.isMate()){
+				int loser = game.position.getToPlay();
+				String color = loser == 1 ? "Black" : "White"; 
+				log("Checkmate on " + color);
 			}
-
-			// System.out.println("activeMoveSource state " +
-			// activeMoveSource.getState());
-
-			// short move =
-			// playerMoveSources[0].getMove(game.position.toString());
-			// System.out.println(move);
-			// boardView.doMove(move);
+			else{
+				log("Terminal state for unknown reasons.");
+			}
+			return;
 		}
 
+		MoveMaker mover = moveMaker[game.position.getToPlay()];
+		mover.start(game.position).whenComplete((move, error) -> Platform.runLater(() -> {
+			if (error != null) {
+				log("Move failed: " + error.getMessage());
+				return;
+			}
+			// the move is applied as soon as the board has finished animating
+			// the previous one
+			boardView.whenReady(() -> applyMove(mover, move));
+		}));
+	}
+
+	private void applyMove(MoveMaker mover, short move) {
+		mover.reset();
+		
+		// an illegal move is logged by the board, and the same player is asked again
+		boardView.doMove(move);
+		requestMove();
 	}
 
 	private class TextFieldMoveMaker implements MoveMaker, EventHandler<ActionEvent> {
 
-		private Worker.State state;
-		short move;
+		private CompletableFuture<Short> pending;
 
 		public TextFieldMoveMaker() {
-			this.state = Worker.State.READY;
+			this.pending = null;
 			commandField.setOnAction(this);
-			move = 0;
 		}
 
 		@Override
-		public void start(Position position) {
+		public CompletableFuture<Short> start(Position position) {
 			// String[] players = {"WHITE", "BLACK"};
 			// commandField.setPromptText("Your move," +
 			// players[position.getToPlay()] + ".");
+			pending = new CompletableFuture<Short>();
+			return pending;
 		}
 
 		@Override
 		public void reset() {
 			commandField.setText("");
-			this.state = Worker.State.READY;
-
-		}
+			this.pending = null;
 
-		@Override
-		public State getState() {
-			return state;
-		}
-
-		@Override
-		public short getMove() {
-			return move;
 		}
 
 		@Override
 		public void handle(ActionEvent e) {
 			String text = commandField.getText();
-			if (text != null & text != "" & text.length() > 0) {
+			// input is only taken when it's the human's turn
+			if (pending != null && text != null & text != "" & text.length() > 0) {
 				//System.out.println("Human move: " + text);
 				log("Human move: " + text + "\n");
 				int fromSqi = Chess.strToSqi(text.charAt(0), text.charAt(1));
 				int toSqi = Chess.strToSqi(text.charAt(2), text.charAt(3));
 
-				move = game.findMove(fromSqi, toSqi);
-				this.state = Worker.State.SUCCEEDED;
+				pending.complete(game.findMove(fromSqi, toSqi));
 
 			}
 
@@ -218,44 +238,84 @@ public class ChessClient extends Application {
 	}
 
 	private class AIMoveMaker implements MoveMaker {
-		ChessAI ai;
+		EngineExecutor engine;
 		AIMoveTask moveTask;
 
 		public AIMoveMaker(ChessAI ai) {
+			this(ai, false);
+		}
+
+		// the engine keeps one search thread for the whole game, and can
+		// optionally run a short search first to warm up the JIT
+		public AIMoveMaker(ChessAI ai, boolean warmUp) {
 			super();
-			this.ai = ai;
+			this.engine = new EngineExecutor(ai);
 			this.moveTask = null;
+			if (warmUp) {
+				engine.warmUp(WARM_UP_MILLIS);
+			}
 		}
 
-		public void start(Position position) {
+		public CompletableFuture<Short> start(Position position) {
+			CompletableFuture<Short> result = new CompletableFuture<Short>();
 
-			moveTask = new AIMoveTask(ai, new Position(position));
+			AIMoveTask task = new AIMoveTask(engine.getAI(), new Position(position));
+			moveTask = task;
+			task.messageProperty().addListener((observable, previous, text) -> statusLabel.setText(text));
+			moveTask.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+				@Override
+				public void handle(WorkerStateEvent event) {
+					moveNowButton.setDisable(true);
+					result.complete(task.getValue());
+				}
+			});
 			moveTask.setOnFailed(new EventHandler<WorkerStateEvent>() {
 				@Override
 				public void handle(WorkerStateEvent event) {
+					moveNowButton.setDisable(true);
 					event.getSource().getException().printStackTrace();
+					result.completeExceptionally(event.getSource().getException());
 				}
 			});
-			new Thread(moveTask).start();
+			moveNowButton.setDisable(false);
+			engine.execute(moveTask);
+			return result;
 		}
 
-		public Worker.State getState() {
-			// short circuit if moveTask hasn't been initalized
-			// (threading bug fix by Yu-Han Lyu)
-			if (moveTask == null)
-				return Worker.State.READY;
-			if (moveTask.getState() == Worker.State.READY)
-				return Worker.State.RUNNING;
-			return moveTask.getState();
+		public void reset() {
+			this.moveTask = null;
 		}
 
-		public short getMove() {
-			return moveTask.getValue();
+		// the search returns with the best move of its last complete iteration
+		public void stop() {
+			if (moveTask != null) {
+				moveTask.stopSearch();
+			}
+		}
+
+	}
 
+	// the engine of a GameServer, which can be told to move now like a local one
+	private class RemoteMoveMaker implements MoveMaker {
+		NetworkMoveMaker remote;
+
+		public RemoteMoveMaker(NetworkMoveMaker remote) {
+			this.remote = remote;
+		}
+
+		public CompletableFuture<Short> start(Position position) {
+			CompletableFuture<Short> result = remote.start(position);
+			moveNowButton.setDisable(false);
+			result.whenComplete((move, error) -> Platform.runLater(() -> moveNowButton.setDisable(true)));
+			return result;
 		}
 
 		public void reset() {
-			this.moveTask = null;
+			remote.reset();
+		}
+
+		public void stop() {
+			remote.stop();
 		}
 
 	}
@@ -2,6 +2,24 @@ package com.chessbot.app;
 
 public class ChessLauncher {
     public static void main(String[] args) {
+        // the engine alone, without loading any JavaFX classes
+        if (args.length > 0 && args[0].equals("--engine")) {
+            String[] engineArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, engineArgs, 0, engineArgs.length);
+            try {
+                EngineLauncher.main(engineArgs);
+            } catch (java.io.IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        // watch self-play games on a grid of boards
+        if (args.length > 0 && args[0].equals("--spectate")) {
+            String[] spectatorArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, spectatorArgs, 0, spectatorArgs.length);
+            SpectatorClient.main(spectatorArgs);
+            return;
+        }
         ChessClient.main(args);
     }
 }
@@ -0,0 +1,422 @@
+package com.chessbot.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// splits the root moves of a search between SearchWorker processes, on this
+// machine or others, so a deep analysis isn't limited to the memory and garbage
+// collection of one process. every worker runs its own iterative deepening over
+// its share of the moves. a depth is complete once all of them have reported it,
+// and its best move is the best any of them found. the best score of a depth is
+// sent to the workers still searching that depth, so they only prove their moves
+// are worse instead of finding by how much, and the deep transposition table
+// entries of each worker are passed on to the others
+// usage: DistributedSearch <depth> <fen> <host:port>...
+public class DistributedSearch implements ChessAI, Closeable {
+
+	private static final int CONNECT_MILLIS = 5000;
+	// how soon a stopped search tells its workers
+	private static final long STOP_POLL_MILLIS = 10;
+
+	private final int maxDepth;
+	private final Worker[] workers;
+	private final BlockingQueue<Report> reports;
+	private SearchListener listener;
+
+	// the search in progress, 0 between searches
+	private volatile int searchId;
+	private volatile SearchStop searchStop = new SearchStop();
+	private int lastId;
+
+	// the workers searching, the first ones when there are fewer root moves than workers
+	private volatile int active;
+
+	// each address is host:port of a running SearchWorker
+	public DistributedSearch(int depth, String... addresses) throws IOException {
+		this.maxDepth = depth;
+		this.reports = new LinkedBlockingQueue<Report>();
+		this.workers = new Worker[addresses.length];
+		try{
+			for(int i = 0; i < addresses.length; i++){
+				workers[i] = new Worker(i, addresses[i]);
+			}
+		}
+		catch(IOException e){
+			close();
+			throw e;
+		}
+	}
+
+	public void setSearchListener(SearchListener listener){
+		this.listener = listener;
+	}
+
+	public short getMove(Position position){
+		return getMove(position, new SearchStop());
+	}
+
+	public short getMove(Position position, SearchStop stop){
+		short[] moves = position.getAllMoves();
+		if(moves.length <= 1){
+			return moves.length == 0 ? 0 : moves[0];
+		}
+		for(Worker worker : workers){
+			if(worker.failure != null){
+				throw new IllegalStateException("Search worker " + worker.address + " failed", worker.failure);
+			}
+		}
+
+		long startTime = System.currentTimeMillis();
+		int id = ++lastId;
+		int count = Math.min(workers.length, moves.length);
+		active = count;
+		searchStop = stop;
+		searchId = id;
+
+		// the moves are dealt out in turn, so every worker gets some of the
+		// captures that come first and some of the quiet moves
+		short[][] shares = new short[count][];
+		for(int i = 0; i < count; i++){
+			shares[i] = new short[(moves.length - i + count - 1) / count];
+		}
+		for(int i = 0; i < moves.length; i++){
+			shares[i % count][i / count] = moves[i];
+		}
+
+		// the moves since the last capture or pawn move go too, for the repetitions
+		int undone = SearchHistory.undoReversible(position);
+		String fen = position.getFEN();
+		short[] played = new short[undone];
+		for(int i = 0; i < undone; i++){
+			position.redoMove();
+			played[i] = position.getLastShortMove();
+		}
+
+		for(int i = 0; i < count; i++){
+			workers[i].search(id, fen, played, maxDepth, shares[i]);
+		}
+
+		// the deepest iteration each worker has reported and what it found
+		int[] workerDepth = new int[count], workerScore = new int[count];
+		short[] workerMove = new short[count];
+		long[] workerNodes = new long[count];
+
+		// the best of each depth so far, and how many workers it is the best of
+		int[] bestScore = new int[maxDepth + 1], reported = new int[maxDepth + 1];
+		short[] bestMove = new short[maxDepth + 1];
+		int completed = 0, finished = 0;
+		boolean stopping = false;
+
+		try{
+			while(finished < count){
+				// the stop is only set on the token, the workers are told of it here
+				Report report = reports.poll(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if(stop.isStopped() && !stopping){
+					stopping = true;
+					stop(id, count);
+				}
+				if(report == null){
+					continue;
+				}
+				if(report.type == Report.FAILED && report.worker < count){
+					stop(id, count);
+					throw new IllegalStateException("Search worker " + workers[report.worker].address + " failed",
+							workers[report.worker].failure);
+				}
+				if(report.id != id){
+					continue;
+				}
+				if(report.type == SearchWorker.FAILED){
+					stop(id, count);
+					throw new IllegalStateException("Search worker " + workers[report.worker].address + " failed: "
+							+ report.message);
+				}
+
+				int w = report.worker;
+				workerNodes[w] = report.nodes;
+				if(report.type == SearchWorker.ITERATION){
+					workerDepth[w] = report.depth;
+					workerScore[w] = report.score;
+					workerMove[w] = report.move;
+					merge(id, w, report.depth, report.score, report.move, bestScore, bestMove, reported, workerDepth);
+				}
+				else{
+					finished++;
+					// a worker stops once it finds a mate, which holds at every deeper depth
+					if(workerDepth[w] > 0 && workerScore[w] >= KillerAI.MATE_BOUND){
+						for(int depth = workerDepth[w] + 1; depth <= maxDepth; depth++){
+							merge(id, w, depth, workerScore[w], workerMove[w], bestScore, bestMove, reported, workerDepth);
+						}
+					}
+				}
+
+				while(completed < maxDepth && reported[completed + 1] == count){
+					completed++;
+					long nodes = 0;
+					for(long workerTotal : workerNodes){
+						nodes += workerTotal;
+					}
+					if(listener != null){
+						listener.iterationComplete(new SearchProgress(completed, bestScore[completed], bestMove[completed],
+								nodes, System.currentTimeMillis() - startTime));
+					}
+					// the mate is the fastest, a faster one would have been found at a lower depth
+					if(bestScore[completed] >= KillerAI.MATE_BOUND && !stopping){
+						stopping = true;
+						stop(id, count);
+					}
+				}
+			}
+		}
+		catch(InterruptedException e){
+			stop(id, count);
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			searchId = 0;
+		}
+		return completed > 0 ? bestMove[completed] : moves[0];
+	}
+
+	// the first report of a depth is its best so far, as is one that beats it.
+	// a worker that was sent the best score only proves its own are no better, so
+	// it can report the same score for a worse move, which never replaces the best
+	private void merge(int id, int w, int depth, int score, short move, int[] bestScore, short[] bestMove,
+			int[] reported, int[] workerDepth){
+		if(reported[depth]++ > 0 && score <= bestScore[depth]){
+			return;
+		}
+		bestScore[depth] = score;
+		bestMove[depth] = move;
+		for(int i = 0; i < workerDepth.length; i++){
+			if(i != w && workerDepth[i] < depth){
+				workers[i].bound(id, depth, score);
+			}
+		}
+	}
+
+	// finish the search now with the best move of the deepest complete depth
+	public void stop(){
+		searchStop.stop();
+	}
+
+	private void stop(int id, int count){
+		for(int i = 0; i < count; i++){
+			workers[i].stop(id);
+		}
+	}
+
+	public void close(){
+		for(Worker worker : workers){
+			if(worker != null){
+				worker.close();
+			}
+		}
+	}
+
+	// what a worker sent, or that its connection failed
+	private static class Report {
+
+		private static final int FAILED = -1;
+
+		private int worker, type, id, depth, score;
+		private short move;
+		private long nodes;
+		private String message;
+
+	}
+
+	// the connection to one worker, read on a thread of its own which passes
+	// the table entries straight on to the other workers of the search
+	private class Worker {
+
+		private final int index;
+		private final String address;
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private volatile IOException failure;
+
+		private Worker(int index, String address) throws IOException {
+			this.index = index;
+			this.address = address;
+			int colon = address.lastIndexOf(':');
+			this.socket = new Socket();
+			socket.connect(new InetSocketAddress(address.substring(0, colon),
+					Integer.parseInt(address.substring(colon + 1))), CONNECT_MILLIS);
+			socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			Thread reader = new Thread(this::read, "ChessBot Coordinator " + address);
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private synchronized void search(int id, String fen, short[] played, int depth, short[] moves){
+			try{
+				out.writeByte(SearchWorker.SEARCH);
+				out.writeInt(id);
+				out.writeUTF(fen);
+				out.writeShort(played.length);
+				for(short move : played){
+					out.writeShort(move);
+				}
+				out.writeInt(depth);
+				out.writeShort(moves.length);
+				for(short move : moves){
+					out.writeShort(move);
+				}
+				out.flush();
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+
+		private synchronized void bound(int id, int depth, int score){
+			try{
+				out.writeByte(SearchWorker.BOUND);
+				out.writeInt(id);
+				out.writeInt(depth);
+				out.writeInt(score);
+				out.flush();
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+
+		private synchronized void stop(int id){
+			try{
+				out.writeByte(SearchWorker.STOP);
+				out.writeInt(id);
+				out.flush();
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+
+		// flushed once the entries that arrived together have all been passed on
+		private synchronized void entry(int id, long key, byte depth, int value, byte bound, short move, boolean flush){
+			try{
+				out.writeByte(SearchWorker.ENTRY);
+				out.writeInt(id);
+				out.writeLong(key);
+				out.writeByte(depth);
+				out.writeInt(value);
+				out.writeByte(bound);
+				out.writeShort(move);
+				if(flush){
+					out.flush();
+				}
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+
+		private void read(){
+			try{
+				while(true){
+					int type = in.read();
+					if(type < 0){
+						throw new IOException("Worker closed the connection");
+					}
+					int id = in.readInt();
+					if(type == SearchWorker.ENTRY){
+						long key = in.readLong();
+						byte depth = in.readByte();
+						int value = in.readInt();
+						byte bound = in.readByte();
+						short move = in.readShort();
+						boolean flush = in.available() == 0;
+						int count = active;
+						for(int i = 0; i < count && id == searchId; i++){
+							if(i != index){
+								workers[i].entry(id, key, depth, value, bound, move, flush);
+							}
+						}
+						continue;
+					}
+
+					Report report = new Report();
+					report.worker = index;
+					report.type = type;
+					report.id = id;
+					if(type == SearchWorker.ITERATION){
+						report.depth = in.readInt();
+						report.score = in.readInt();
+						report.move = in.readShort();
+						report.nodes = in.readLong();
+					}
+					else if(type == SearchWorker.DONE){
+						report.move = in.readShort();
+						report.nodes = in.readLong();
+					}
+					else if(type == SearchWorker.FAILED){
+						report.message = in.readUTF();
+					}
+					else{
+						throw new IOException("Unknown message " + type);
+					}
+					reports.add(report);
+				}
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+
+		private void fail(IOException e){
+			if(failure != null){
+				return;
+			}
+			failure = e;
+			Report report = new Report();
+			report.worker = index;
+			report.type = Report.FAILED;
+			reports.add(report);
+			close();
+		}
+
+		private void close(){
+			try{
+				socket.close();
+			}
+			catch(IOException e){
+			}
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3){
+			System.err.println("usage: DistributedSearch <depth> <fen> <host:port>...");
+			System.exit(1);
+		}
+		String[] addresses = new String[args.length - 2];
+		System.arraycopy(args, 2, addresses, 0, addresses.length);
+		DistributedSearch search = new DistributedSearch(Integer.parseInt(args[0]), addresses);
+		search.setSearchListener(progress -> System.out.println("depth " + progress.getDepth()
+				+ " score " + progress.getScore() + " move " + Move.getString(progress.getBestMove())
+				+ " nodes " + progress.getNodes() + " nps " + progress.getNodesPerSecond()));
+		short move = search.getMove(new Position(args[1]));
+		System.out.println("bestmove " + Move.getString(move));
+		search.close();
+	}
+
+}
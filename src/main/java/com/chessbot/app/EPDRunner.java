@@ -0,0 +1,359 @@
+package com.chessbot.app;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+// runs a suite of EPD test positions through any ChessAI, several positions at a
+// time, and writes one JSON line per position with the move played, whether it
+// matches the bm/am operations and how long and how many nodes it took to settle
+// on the solution, followed by a summary line
+// usage: EPDRunner <suite.epd> [millis per position] [threads] [engine] [results file]
+public class EPDRunner {
+
+	private Supplier<ChessAI> engines;
+	private int threads;
+	private long timeMillis;
+
+	// every thread gets its own engine from engines, since engines keep their
+	// tables and counters in instance state
+	public EPDRunner(Supplier<ChessAI> engines, int threads, long timeMillis){
+		this.engines = engines;
+		this.threads = threads;
+		this.timeMillis = timeMillis;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1){
+			System.err.println("usage: EPDRunner <suite.epd> [millis per position] [threads] [engine] [results file]");
+			System.exit(1);
+		}
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		String name = args.length > 3 ? args[3] : "killer";
+		Supplier<ChessAI> engines = getEngines(name, millis);
+		// a worker serves one coordinator at a time, so a second one would wait for
+		// it forever, and the workers search in parallel anyway
+		if(name.startsWith("workers:") && threads > 1){
+			System.err.println("Running the suite on one thread, the workers serve one search at a time");
+			threads = 1;
+		}
+
+		List<Entry> suite = read(args[0]);
+		// the older engines print as they search, so results can go to a file instead
+		PrintStream out = args.length > 4 ? new PrintStream(new FileOutputStream(args[4])) : System.out;
+		new EPDRunner(engines, threads, millis).run(suite, out);
+		out.flush();
+	}
+
+	private static Supplier<ChessAI> getEngines(String name, long millis) throws IOException {
+		// nnue:<weights file> is KillerAI evaluating with that network
+		if(name.startsWith("nnue:")){
+			NeuralNetwork network = NeuralNetwork.load(name.substring(5));
+			return () -> {
+				KillerAI ai = new KillerAI(64, 32, null);
+				ai.setNetwork(network);
+				return ai;
+			};
+		}
+		// workers:<host:port>,... is a DistributedSearch over those workers
+		if(name.startsWith("workers:")){
+			String[] addresses = name.substring(8).split(",");
+			return () -> {
+				try{
+					return new DistributedSearch(64, addresses);
+				}
+				catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			};
+		}
+		switch(name){
+			case "killer": return () -> new KillerAI(64, 32, null);
+			case "mtdf": return () -> new MTDFAI(5);
+			case "trans": return () -> new TransAI(5);
+			case "mcts": return () -> new MonteCarloAI(millis, 1, 1 << 20, 8);
+			case "pn": return () -> new ProofNumberAI(8, 64);
+			default: throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	public static List<Entry> read(String file) throws IOException {
+		List<Entry> suite = new ArrayList<Entry>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))){
+			String line;
+			int number = 0;
+			while((line = reader.readLine()) != null){
+				number++;
+				if(line.trim().isEmpty() || line.startsWith("#")){
+					continue;
+				}
+				// one broken position is left out rather than losing the whole suite
+				try{
+					suite.add(new Entry(line.trim(), number));
+				}
+				catch(IllegalArgumentException e){
+					System.err.println("Skipping " + e.getMessage());
+				}
+			}
+		}
+		return suite;
+	}
+
+	// returns the number of positions solved
+	public int run(List<Entry> suite, PrintStream out) throws InterruptedException {
+		// kept to close the ones that hold connections once the suite is done
+		List<ChessAI> created = new ArrayList<ChessAI>();
+		ThreadLocal<ChessAI> engine = ThreadLocal.withInitial(() -> {
+			ChessAI ai = engines.get();
+			synchronized(created){
+				created.add(ai);
+			}
+			return ai;
+		});
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		long start = System.currentTimeMillis();
+
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for(Entry entry : suite){
+			results.add(workers.submit(() -> {
+				String result = solve(engine.get(), entry, timer);
+				synchronized(out){
+					out.println(result);
+				}
+				return entry.solved;
+			}));
+		}
+
+		int solved = 0, failed = 0;
+		for(Future<Boolean> result : results){
+			try{
+				if(result.get()){
+					solved++;
+				}
+			}
+			catch(Exception e){
+				failed++;
+				e.printStackTrace();
+			}
+		}
+		workers.shutdown();
+		timer.shutdownNow();
+		synchronized(created){
+			for(ChessAI ai : created){
+				if(ai instanceof Closeable){
+					try{
+						((Closeable) ai).close();
+					}
+					catch(IOException e){
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+
+		out.println("{\"positions\":" + suite.size() + ",\"solved\":" + solved + ",\"errors\":" + failed
+				+ ",\"threads\":" + threads + ",\"millisPerPosition\":" + timeMillis
+				+ ",\"totalMillis\":" + (System.currentTimeMillis() - start) + "}");
+		return solved;
+	}
+
+	private String solve(ChessAI ai, Entry entry, ScheduledExecutorService timer){
+		Progress progress = new Progress(entry);
+		ai.setSearchListener(progress);
+
+		SearchStop stop = new SearchStop();
+		ScheduledFuture<?> timeout = timer.schedule(stop::stop, timeMillis, TimeUnit.MILLISECONDS);
+		long start = System.currentTimeMillis();
+		short move;
+		try{
+			move = ai.getMove(new Position(entry.position), stop);
+		}
+		finally{
+			timeout.cancel(false);
+			ai.setSearchListener(null);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		entry.solved = entry.matches(move);
+		if(entry.solved && progress.solveMillis < 0){
+			// the engine doesn't report its iterations, only the end result is known
+			progress.solveMillis = elapsed;
+		}
+
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"id\":").append(quote(entry.id));
+		json.append(",\"move\":").append(quote(toSAN(entry.position, move)));
+		json.append(",\"bm\":").append(quote(entry.best));
+		json.append(",\"am\":").append(quote(entry.avoid));
+		json.append(",\"solved\":").append(entry.solved);
+		json.append(",\"millis\":").append(elapsed);
+		json.append(",\"nodes\":").append(progress.nodes);
+		json.append(",\"depth\":").append(progress.depth);
+		json.append(",\"solveMillis\":").append(entry.solved ? progress.solveMillis : -1);
+		json.append(",\"solveNodes\":").append(entry.solved ? progress.solveNodes : -1);
+		return json.append('}').toString();
+	}
+
+	private static String quote(String text){
+		if(text == null){
+			return "null";
+		}
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	// standard algebraic notation of move, without check marks
+	private static String toSAN(String fen, short move){
+		Position position = new Position(fen);
+		try{
+			position.doMove(move);
+			return stripSAN(position.getLastMove().getSAN());
+		}
+		catch(IllegalMoveException e){
+			return null;
+		}
+	}
+
+	private static String stripSAN(String san){
+		return san.replaceAll("[+#!?]", "");
+	}
+
+	// the first iteration that found a solution, reset whenever a later one
+	// changes its mind to a move that isn't one
+	private static class Progress implements SearchListener {
+
+		private Entry entry;
+		private long solveMillis = -1, solveNodes = -1, nodes = -1;
+		private int depth = -1;
+
+		private Progress(Entry entry){
+			this.entry = entry;
+		}
+
+		public void iterationComplete(SearchProgress progress){
+			nodes = progress.getNodes();
+			depth = progress.getDepth();
+			if(!entry.matches(progress.getBestMove())){
+				solveMillis = -1;
+				solveNodes = -1;
+			}
+			else if(solveMillis < 0){
+				solveMillis = progress.getElapsedMillis();
+				solveNodes = progress.getNodes();
+			}
+		}
+
+	}
+
+	// one line of the suite, the board, side to move, castling and en passant
+	// fields followed by operations such as bm Qxf7+; am Nc3; id "WAC.001";
+	public static class Entry {
+
+		private String id, position, best, avoid;
+		private short[] bestMoves, avoidMoves;
+		private boolean solved;
+
+		private Entry(String line, int number){
+			String[] fields = line.split("\\s+", 5);
+			if(fields.length < 4){
+				throw new IllegalArgumentException("Bad EPD on line " + number + ": " + line);
+			}
+			position = fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3] + " 0 1";
+			id = "line " + number;
+
+			String operations = fields.length > 4 ? fields[4] : "";
+			for(String operation : operations.split(";")){
+				operation = operation.trim();
+				int space = operation.indexOf(' ');
+				if(space < 0){
+					continue;
+				}
+				String opcode = operation.substring(0, space);
+				String operand = operation.substring(space + 1).trim();
+				if(opcode.equals("id")){
+					id = operand.replace("\"", "");
+				}
+				else if(opcode.equals("bm")){
+					best = operand;
+				}
+				else if(opcode.equals("am")){
+					avoid = operand;
+				}
+			}
+
+			try{
+				bestMoves = resolve(best);
+				avoidMoves = resolve(avoid);
+			}
+			catch(IllegalArgumentException e){
+				throw new IllegalArgumentException("Bad position on line " + number + ": " + e.getMessage());
+			}
+			if(bestMoves.length == 0 && avoidMoves.length == 0){
+				throw new IllegalArgumentException("No legal bm or am move on line " + number + ": " + line);
+			}
+		}
+
+		// the legal moves whose notation is in the list of moves
+		private short[] resolve(String sanList){
+			if(sanList == null){
+				return new short[0];
+			}
+			List<String> wanted = new ArrayList<String>();
+			for(String san : sanList.split("\\s+")){
+				wanted.add(stripSAN(san));
+			}
+
+			Position board = new Position(position);
+			short[] found = new short[wanted.size()];
+			int count = 0;
+			for(short move : board.getAllMoves()){
+				if(count < found.length && wanted.contains(toSAN(position, move))){
+					found[count++] = move;
+				}
+			}
+			short[] result = new short[count];
+			System.arraycopy(found, 0, result, 0, count);
+			return result;
+		}
+
+		private boolean matches(short move){
+			for(short avoided : avoidMoves){
+				if(avoided == move){
+					return false;
+				}
+			}
+			if(bestMoves.length == 0){
+				return true;
+			}
+			for(short wanted : bestMoves){
+				if(wanted == move){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public String getId(){
+			return id;
+		}
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.chessbot.app;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import chesspresso.position.Position;
+
+// a long lived engine thread that owns a ChessAI and runs its searches one after
+// another, so the thread, the engine's tables and the JIT compiled search code
+// stay warm between moves instead of starting over on a new thread every move
+public class EngineExecutor implements Executor {
+
+	// one timer thread shared by every engine to stop searches that run out of time
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ChessBot Engine Timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ChessAI ai;
+	private final ExecutorService thread;
+	// the stop of the search running on the engine thread
+	private final AtomicReference<SearchStop> current;
+
+	public EngineExecutor(ChessAI ai){
+		this.ai = ai;
+		this.current = new AtomicReference<SearchStop>();
+		this.thread = Executors.newSingleThreadExecutor(runnable -> {
+			Thread engine = new Thread(runnable, "ChessBot Engine");
+			engine.setDaemon(true);
+			return engine;
+		});
+	}
+
+	public ChessAI getAI(){
+		return ai;
+	}
+
+	// run any task on the engine thread, behind the searches already queued
+	public void execute(Runnable task){
+		thread.execute(task);
+	}
+
+	public CompletableFuture<Short> submit(Position position){
+		return submit(position, 0);
+	}
+
+	// search a copy of position, stopping with the best move so far after
+	// timeLimitMillis if that is positive, cancelling the future stops the search
+	// whether it is running or still waiting its turn
+	public CompletableFuture<Short> submit(Position position, long timeLimitMillis){
+		Position copy = new Position(position);
+		CompletableFuture<Short> result = new CompletableFuture<Short>();
+		SearchStop stop = new SearchStop();
+
+		result.whenComplete((move, error) -> {
+			if(result.isCancelled()){
+				stop.stop();
+			}
+		});
+
+		thread.execute(() -> {
+			// cancelled while it was still waiting in the queue
+			if(result.isDone()){
+				return;
+			}
+
+			current.set(stop);
+			ScheduledFuture<?> timeout = null;
+			if(timeLimitMillis > 0){
+				timeout = TIMER.schedule(stop::stop, timeLimitMillis, TimeUnit.MILLISECONDS);
+			}
+
+			try{
+				result.complete(ai.getMove(copy, stop));
+			}
+			catch(Throwable e){
+				result.completeExceptionally(e);
+			}
+			finally{
+				current.set(null);
+				if(timeout != null){
+					timeout.cancel(false);
+				}
+			}
+		});
+		return result;
+	}
+
+	// make the search in progress finish now with the best move it has found
+	public void stop(){
+		SearchStop running = current.get();
+		if(running != null){
+			running.stop();
+		}
+	}
+
+	// a throwaway search from the initial position, so the first real move
+	// doesn't pay for class loading and JIT compilation
+	public CompletableFuture<Short> warmUp(long timeLimitMillis){
+		return submit(Position.createInitialPosition(), timeLimitMillis);
+	}
+
+	public void shutdown(){
+		stop();
+		thread.shutdownNow();
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.chessbot.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import com.sun.net.httpserver.HttpServer;
+
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// command line entry point for the engine alone, it never touches JavaFX so
+// short lived batch runs don't pay for loading the GUI classes
+// usage: EngineLauncher [--store <file>] [--trace <file>] [--metrics <port>] <depth> [fen],
+// without a fen one position is read per line, with a store positions searched
+// before are looked up in it, with a trace every search is traced to the file and
+// summarized on stderr, see SearchTrace, and with a port the search metrics are
+// served at /metrics, see EngineMetrics
+public class EngineLauncher {
+
+	// one in this many nodes below the first plies is written to a trace
+	private static final int TRACE_SAMPLE = 256;
+
+	public static void main(String[] args) throws IOException {
+		EvalStore store = null;
+		SearchTrace trace = null;
+		HttpServer metrics = null;
+		try {
+			while (args.length > 1 && args[0].startsWith("--")) {
+				if (args[0].equals("--store")) {
+					store = new EvalStore(args[1]);
+				} else if (args[0].equals("--trace")) {
+					trace = new SearchTrace(args[1], TRACE_SAMPLE);
+				} else if (args[0].equals("--metrics")) {
+					metrics = EngineMetrics.serve(Integer.parseInt(args[1]));
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + args[0]);
+				}
+				args = Arrays.copyOfRange(args, 2, args.length);
+			}
+			run(args, store, trace);
+		} finally {
+			if (store != null) {
+				store.close();
+			}
+			if (trace != null) {
+				trace.close();
+			}
+			if (metrics != null) {
+				metrics.stop(0);
+			}
+		}
+	}
+
+	private static void run(String[] args, EvalStore store, SearchTrace trace) throws IOException {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		KillerAI ai = new KillerAI(depth, trace == null ? null : System.err::println);
+		ai.setEvalStore(store);
+		ai.setTrace(trace);
+
+		if (args.length > 1) {
+			// the fields of an unquoted fen arrive as separate arguments
+			StringBuilder fen = new StringBuilder(args[1]);
+			for (int i = 2; i < args.length; i++) {
+				fen.append(' ').append(args[i]);
+			}
+			search(ai, fen.toString());
+			return;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.trim().isEmpty()) {
+				search(ai, line.trim());
+			}
+		}
+	}
+
+	private static void search(ChessAI ai, String fen) {
+		short move = ai.getMove(new Position(fen));
+		System.out.println(Move.getString(move));
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.chessbot.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpServer;
+
+// process wide counters of every KillerAI search, in the Prometheus text format
+// so they can be scraped from /metrics while games are played. the engines of
+// all threads add to the same counters, which are striped so they don't contend
+public class EngineMetrics {
+
+	// upper bounds of the move latency histogram in seconds
+	private static final double[] BUCKETS = {0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+	private static final LongAdder searches = new LongAdder();
+	private static final LongAdder storeAnswers = new LongAdder();
+	private static final LongAdder stoppedSearches = new LongAdder();
+	private static final LongAdder nodes = new LongAdder();
+	private static final LongAdder[] latencyBuckets = new LongAdder[BUCKETS.length + 1];
+	private static final DoubleAdder latencySum = new DoubleAdder();
+
+	// the last search of any engine
+	private static volatile long lastNodesPerSecond;
+	private static volatile int lastDepth;
+	private static volatile double lastTranspositionHitRate;
+
+	static {
+		for(int i = 0; i < latencyBuckets.length; i++){
+			latencyBuckets[i] = new LongAdder();
+		}
+	}
+
+	private EngineMetrics(){
+	}
+
+	// one finished getMove, seconds from the call to the move
+	static void recordSearch(double seconds, long searchNodes, long nodesPerSecond, int depth,
+			double transpositionHitRate, boolean fromStore, boolean stopped){
+		searches.increment();
+		latencySum.add(seconds);
+		int bucket = 0;
+		while(bucket < BUCKETS.length && seconds > BUCKETS[bucket]){
+			bucket++;
+		}
+		latencyBuckets[bucket].increment();
+
+		if(fromStore){
+			storeAnswers.increment();
+			return;
+		}
+		if(stopped){
+			stoppedSearches.increment();
+		}
+		nodes.add(searchNodes);
+		lastNodesPerSecond = nodesPerSecond;
+		lastDepth = depth;
+		lastTranspositionHitRate = transpositionHitRate;
+	}
+
+	public static String scrape(){
+		StringBuilder text = new StringBuilder();
+		counter(text, "chessbot_searches_total", "Moves chosen by the engine.", searches.sum());
+		counter(text, "chessbot_store_answers_total", "Moves answered from the evaluation store.", storeAnswers.sum());
+		counter(text, "chessbot_stopped_searches_total", "Searches stopped before reaching their depth.", stoppedSearches.sum());
+		counter(text, "chessbot_nodes_total", "Nodes searched.", nodes.sum());
+
+		text.append("# HELP chessbot_move_seconds Time from the start of a search to its move.\n");
+		text.append("# TYPE chessbot_move_seconds histogram\n");
+		long cumulative = 0;
+		for(int i = 0; i < BUCKETS.length; i++){
+			cumulative += latencyBuckets[i].sum();
+			text.append("chessbot_move_seconds_bucket{le=\"").append(BUCKETS[i]).append("\"} ").append(cumulative).append('\n');
+		}
+		cumulative += latencyBuckets[BUCKETS.length].sum();
+		text.append("chessbot_move_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		text.append("chessbot_move_seconds_sum ").append(latencySum.sum()).append('\n');
+		text.append("chessbot_move_seconds_count ").append(cumulative).append('\n');
+
+		gauge(text, "chessbot_nodes_per_second", "Search speed of the last search.", lastNodesPerSecond);
+		gauge(text, "chessbot_search_depth", "Depth of the last complete iteration of the last search.", lastDepth);
+		gauge(text, "chessbot_transposition_hit_ratio", "Transposition table hit rate of the last search.", lastTranspositionHitRate);
+		return text.toString();
+	}
+
+	private static void counter(StringBuilder text, String name, String help, long value){
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(" counter\n");
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void gauge(StringBuilder text, String name, String help, double value){
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(" gauge\n");
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	// serve the metrics at http://<host>:<port>/metrics until the server is stopped
+	public static HttpServer serve(int port) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/metrics", exchange -> {
+			byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()){
+				out.write(body);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.chessbot.app;
+
+// passes transposition table entries between the engines of a distributed
+// search, so a position one engine has searched deeply is a hit for the others
+// too. both are called on the searching thread, see SearchWorker
+interface EntrySharing {
+
+	// an entry the engine has just stored, sent on if it is deep enough to be worth it
+	public void stored(long key, int depth, int value, int bound, short move);
+
+	// store the entries received from the other engines since the last call
+	public void receive(TranspositionTable table);
+
+}
@@ -0,0 +1,247 @@
+package com.chessbot.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// persistent store of search results keyed by the position's hash code, so a
+// position that was searched before is looked up instead of searched again
+// results are appended to a log of fixed size records, and an index from hash
+// code to the deepest record for it is kept in memory and saved beside the log
+// when the store is closed, a log written past the saved index is read from
+// where the index left off, so a crash only costs the time to reindex the tail
+public class EvalStore implements AutoCloseable {
+
+	// hash, score, best move, depth, a spare byte and the time it was stored
+	static final int RECORD_BYTES = 24;
+	private static final int SCORE = 8;
+	private static final int MOVE = 12;
+	private static final int DEPTH = 14;
+	private static final int TIME = 16;
+
+	private static final int INDEX_MAGIC = 0x43424958;
+
+	private FileChannel log;
+	private File indexFile;
+	private long logSize;
+	private ByteBuffer record;
+
+	// open addressing from hash to the offset of its record plus one, zero is empty
+	private long[] keys, offsets;
+	private int count, mask;
+
+	private long lookups, hits;
+
+	public EvalStore(String file) throws IOException {
+		log = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		indexFile = new File(file + ".idx");
+		record = ByteBuffer.allocate(RECORD_BYTES);
+		allocate(1 << 16);
+
+		// a record cut short by a crash is dropped
+		logSize = log.size() - log.size() % RECORD_BYTES;
+		log.truncate(logSize);
+
+		long indexed = loadIndex();
+		reindex(indexed);
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		offsets = new long[capacity];
+		mask = capacity - 1;
+		count = 0;
+	}
+
+	// returns how much of the log the saved index covers
+	private long loadIndex() throws IOException {
+		if(!indexFile.exists()){
+			return 0;
+		}
+		try(FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)){
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){
+			}
+			buffer.flip();
+			if(buffer.remaining() < 16 || buffer.getInt() != INDEX_MAGIC){
+				return 0;
+			}
+			long covered = buffer.getLong();
+			int entries = buffer.getInt();
+			if(covered > logSize || buffer.remaining() < entries * 16L){
+				return 0;
+			}
+			allocate(Integer.highestOneBit(Math.max(entries * 2, 1 << 16)) * 2);
+			for(int i = 0; i < entries; i++){
+				insert(buffer.getLong(), buffer.getLong());
+			}
+			return covered;
+		}
+	}
+
+	// add the records from offset on to the index
+	private void reindex(long offset) throws IOException {
+		if(offset == 0){
+			allocate(keys.length);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+		while(offset < logSize){
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), logSize - offset));
+			while(buffer.hasRemaining()){
+				log.read(buffer, offset + buffer.position());
+			}
+			buffer.flip();
+			for(int i = 0; i < buffer.limit(); i += RECORD_BYTES){
+				long key = buffer.getLong(i);
+				long existing = find(key);
+				if(existing < 0 || buffer.get(i + DEPTH) >= readDepth(existing)){
+					insert(key, offset + i);
+				}
+			}
+			offset += buffer.limit();
+		}
+	}
+
+	// the offset of the record indexed for key, or -1
+	private long find(long key){
+		int slot = slot(key);
+		while(offsets[slot] != 0){
+			if(keys[slot] == key){
+				return offsets[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void insert(long key, long offset){
+		if(2 * (count + 1) > keys.length){
+			long[] oldKeys = keys, oldOffsets = offsets;
+			allocate(2 * keys.length);
+			for(int i = 0; i < oldKeys.length; i++){
+				if(oldOffsets[i] != 0){
+					insert(oldKeys[i], oldOffsets[i] - 1);
+				}
+			}
+		}
+		int slot = slot(key);
+		while(offsets[slot] != 0 && keys[slot] != key){
+			slot = (slot + 1) & mask;
+		}
+		if(offsets[slot] == 0){
+			count++;
+		}
+		keys[slot] = key;
+		offsets[slot] = offset + 1;
+	}
+
+	private int slot(long key){
+		// the low bits of the hash code feed the table, mix in the high ones too
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	private ByteBuffer read(long offset) throws IOException {
+		record.clear();
+		while(record.hasRemaining()){
+			log.read(record, offset + record.position());
+		}
+		record.flip();
+		return record;
+	}
+
+	private int readDepth(long offset) throws IOException {
+		return read(offset).get(DEPTH);
+	}
+
+	// the record for key if it was searched at least minDepth deep, or null
+	public synchronized Record lookup(long key, int minDepth) throws IOException {
+		lookups++;
+		long offset = find(key);
+		if(offset < 0){
+			return null;
+		}
+		ByteBuffer found = read(offset);
+		if(found.get(DEPTH) < minDepth){
+			return null;
+		}
+		hits++;
+		return new Record(found.get(DEPTH), found.getInt(SCORE), found.getShort(MOVE), found.getLong(TIME));
+	}
+
+	// a result is only kept if it is at least as deep as the one already stored
+	public synchronized void store(long key, int depth, int score, short move) throws IOException {
+		long existing = find(key);
+		if(existing >= 0 && readDepth(existing) > depth){
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+		buffer.putLong(key).putInt(score).putShort(move).put((byte) depth).put((byte) 0)
+				.putLong(System.currentTimeMillis());
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			log.write(buffer, logSize + buffer.position());
+		}
+		insert(key, logSize);
+		logSize += RECORD_BYTES;
+	}
+
+	public synchronized int size(){ return count; }
+
+	// one stored search result, the score is for the side to move
+	public static class Record {
+
+		private int depth, score;
+		private short move;
+		private long time;
+
+		private Record(int depth, int score, short move, long time){
+			this.depth = depth;
+			this.score = score;
+			this.move = move;
+			this.time = time;
+		}
+
+		public int getDepth(){ return depth; }
+		public int getScore(){ return score; }
+		public short getMove(){ return move; }
+		public long getTime(){ return time; }
+
+	}
+
+	public synchronized double getHitRate(){
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	// save the index so the next open doesn't have to read the whole log
+	public synchronized void close() throws IOException {
+		log.force(true);
+		ByteBuffer buffer = ByteBuffer.allocate(16 + count * 16);
+		buffer.putInt(INDEX_MAGIC).putLong(logSize).putInt(count);
+		for(int i = 0; i < keys.length; i++){
+			if(offsets[i] != 0){
+				buffer.putLong(keys[i]).putLong(offsets[i] - 1);
+			}
+		}
+		buffer.flip();
+
+		// written to a temporary file first, so a crash can't leave a broken index
+		File temporary = new File(indexFile.getPath() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+		if(!temporary.renameTo(indexFile)){
+			indexFile.delete();
+			temporary.renameTo(indexFile);
+		}
+		log.close();
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.chessbot.app;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chesspresso.position.Position;
+
+// hosts many games against the engine at once, each game has its own KillerAI
+// with a fixed slice of the hash memory, and every game shares one pool of search
+// threads that always runs the search with the earliest deadline next, so memory
+// stays bounded however many games are open and no game waits behind slow ones
+public class GameHost {
+
+	private final int maxGames, depth, hashMBPerGame;
+	private final ThreadPoolExecutor workers;
+	private final ScheduledExecutorService timer;
+	private final Map<Integer, Session> sessions;
+	private final AtomicInteger nextId;
+
+	// breaks ties between equal deadlines in the order the searches were requested
+	private final AtomicLong sequence;
+
+	// totalHashMB is split evenly between maxGames games, so the transposition
+	// tables never use more than that together
+	public GameHost(int threads, int maxGames, int totalHashMB, int depth){
+		this.maxGames = maxGames;
+		this.depth = depth;
+		this.hashMBPerGame = Math.max(totalHashMB / maxGames, 1);
+		this.sessions = new ConcurrentHashMap<Integer, Session>();
+		this.nextId = new AtomicInteger();
+		this.sequence = new AtomicLong();
+
+		AtomicInteger count = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), runnable -> {
+			Thread thread = new Thread(runnable, "ChessBot Host " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// started up front so every search goes through the deadline ordered queue
+		this.workers.prestartAllCoreThreads();
+
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ChessBot Host Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// a new game from the initial position, throws if the host is full
+	public Session openGame(){
+		return openGame(Position.createInitialPosition());
+	}
+
+	public Session openGame(Position position){
+		synchronized(sessions){
+			if(sessions.size() >= maxGames){
+				throw new IllegalStateException("Game host is full: " + maxGames + " games");
+			}
+			Session session = new Session(nextId.incrementAndGet(), position);
+			sessions.put(session.id, session);
+			return session;
+		}
+	}
+
+	public Session getGame(int id){
+		return sessions.get(id);
+	}
+
+	public Collection<Session> getGames(){
+		return Collections.unmodifiableCollection(sessions.values());
+	}
+
+	// stops any search of the game and frees its engine
+	public void closeGame(Session session){
+		sessions.remove(session.id);
+		session.cancel();
+	}
+
+	// ask the engine for a move in the game's current position, the search stops
+	// with the best move so far timeLimitMillis after this call, however long it
+	// waited for a thread, so the reply always arrives close to the deadline
+	public CompletableFuture<Short> requestMove(Session session, long timeLimitMillis){
+		long deadline = System.currentTimeMillis() + timeLimitMillis;
+		Search search;
+		synchronized(session){
+			if(session.pending != null && !session.pending.isDone()){
+				throw new IllegalStateException("Game " + session.id + " is already searching");
+			}
+			search = new Search(session, new Position(session.game.position), deadline, sequence.incrementAndGet());
+			session.pending = search.result;
+			session.searching = search;
+		}
+
+		// the deadline stops the search even while it waits for a thread, it then
+		// still plays the move found by its first iteration
+		ScheduledFuture<?> timeout = timer.schedule(search.stop::stop, timeLimitMillis, TimeUnit.MILLISECONDS);
+		search.result.whenComplete((move, error) -> {
+			timeout.cancel(false);
+			if(search.result.isCancelled()){
+				search.stop.stop();
+			}
+		});
+		workers.execute(search);
+		return search.result;
+	}
+
+	public int getActiveGames(){
+		return sessions.size();
+	}
+
+	public int getQueuedSearches(){
+		return workers.getQueue().size();
+	}
+
+	public int getHashMBPerGame(){
+		return hashMBPerGame;
+	}
+
+	public void shutdown(){
+		for(Session session : sessions.values()){
+			closeGame(session);
+		}
+		workers.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	// one game and the engine playing it
+	public class Session {
+
+		private final int id;
+		private final ChessGame game;
+		private final KillerAI ai;
+		private CompletableFuture<Short> pending;
+		// the last search requested, running or still queued
+		private Search searching;
+
+		private Session(int id, Position position){
+			this.id = id;
+			this.game = new ChessGame();
+			this.game.position = new Position(position);
+			this.ai = new KillerAI(depth, hashMBPerGame, null);
+		}
+
+		public int getId(){
+			return id;
+		}
+
+		// the moves of both sides are made here, the engine only suggests them
+		public synchronized void doMove(short move){
+			if(pending != null && !pending.isDone()){
+				throw new IllegalStateException("Game " + id + " is searching");
+			}
+			game.doMove(move);
+		}
+
+		// for a player that keeps the game itself and sends the whole position
+		public synchronized void setPosition(Position position){
+			if(pending != null && !pending.isDone()){
+				throw new IllegalStateException("Game " + id + " is searching");
+			}
+			game.position = new Position(position);
+		}
+
+		public synchronized String getFEN(){
+			return game.position.getFEN();
+		}
+
+		public synchronized boolean isSearching(){
+			return pending != null && !pending.isDone();
+		}
+
+		// the search of the game finishes now with its best move so far, one still
+		// waiting for a thread only runs its first iteration once it gets one
+		public synchronized void stop(){
+			if(searching != null){
+				searching.stop.stop();
+			}
+		}
+
+		// a cancelled result stops its search, running or queued
+		private synchronized void cancel(){
+			if(pending != null){
+				pending.cancel(false);
+			}
+		}
+
+	}
+
+	// a queued search, earlier deadlines are taken off the queue first
+	private class Search implements Runnable, Comparable<Search> {
+
+		private final Session session;
+		private final Position position;
+		private final long deadline, order;
+		private final CompletableFuture<Short> result;
+		private final SearchStop stop;
+
+		private Search(Session session, Position position, long deadline, long order){
+			this.session = session;
+			this.position = position;
+			this.deadline = deadline;
+			this.order = order;
+			this.result = new CompletableFuture<Short>();
+			this.stop = new SearchStop();
+		}
+
+		public int compareTo(Search other){
+			if(deadline != other.deadline){
+				return Long.compare(deadline, other.deadline);
+			}
+			return Long.compare(order, other.order);
+		}
+
+		public void run(){
+			// cancelled while it was waiting, or the game was closed
+			if(result.isDone()){
+				return;
+			}
+
+			try{
+				result.complete(session.ai.getMove(position, stop));
+			}
+			catch(Throwable e){
+				result.completeExceptionally(e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,344 @@
+package com.chessbot.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// serves the games of a GameHost to remote players over one selector thread, so
+// thousands of idle connections cost a buffer each and the searches themselves
+// run on the host's pool. every command and reply is one line of ascii text:
+//
+//   new                        ->  game <id>
+//   go <id> <millis> <fen>     ->  move <id> <e2e4|e7e8q>, once the search is done
+//   stop <id>                      the search replies now with its best move
+//   close <id>                 ->  closed <id>
+//   quit                           the server closes the connection
+//
+// and anything that goes wrong is answered with error <id> <message>, id 0 when
+// it isn't about a game. a connection only sees its own games, which are closed
+// with it. see NetworkMoveMaker for the client
+// usage: GameServer <port> [threads] [games] [hash MB] [depth]
+public class GameServer implements Runnable, Closeable {
+
+	// a fen is under 100 characters, a longer line is a confused client
+	private static final int MAX_LINE = 256;
+
+	private final GameHost host;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+
+	// connections with replies written by search threads, flushed by the selector thread
+	private final Queue<Connection> flushes;
+	private volatile boolean closed;
+
+	public GameServer(GameHost host, int port) throws IOException {
+		this.host = host;
+		this.flushes = new ConcurrentLinkedQueue<Connection>();
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	// the port listened on, the one chosen by the system when constructed with 0
+	public int getPort(){
+		return server.socket().getLocalPort();
+	}
+
+	public void run(){
+		try{
+			while(!closed){
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid()){
+						continue;
+					}
+					if(key.isAcceptable()){
+						accept();
+					}
+					else{
+						Connection connection = (Connection) key.attachment();
+						try{
+							if(key.isReadable()){
+								connection.read();
+							}
+							if(key.isValid() && key.isWritable()){
+								connection.flush();
+							}
+						}
+						catch(IOException e){
+							connection.close();
+						}
+					}
+				}
+
+				Connection connection;
+				while((connection = flushes.poll()) != null){
+					try{
+						connection.flush();
+					}
+					catch(IOException e){
+						connection.close();
+					}
+				}
+			}
+		}
+		catch(IOException e){
+			if(!closed){
+				e.printStackTrace();
+			}
+		}
+		finally{
+			for(SelectionKey key : selector.keys()){
+				if(key.attachment() instanceof Connection){
+					((Connection) key.attachment()).close();
+				}
+			}
+			try{
+				selector.close();
+				server.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// stops the selector thread, which closes every connection and its games
+	public void close(){
+		closed = true;
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if(channel == null){
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+	}
+
+	// coordinate notation, e2e4 or e7e8q for a promotion
+	static String formatMove(short move){
+		String text = Chess.sqiToStr(Move.getFromSqi(move)) + Chess.sqiToStr(Move.getToSqi(move));
+		if(Move.isPromotion(move)){
+			text += Character.toLowerCase(Chess.pieceToChar(Move.getPromotionPiece(move)));
+		}
+		return text;
+	}
+
+	// the legal move of the position written as formatMove writes it, or 0
+	static short parseMove(Position position, String text){
+		for(short move : position.getAllMoves()){
+			if(formatMove(move).equals(text)){
+				return move;
+			}
+		}
+		return 0;
+	}
+
+	// one client, only touched by the selector thread apart from send()
+	private class Connection {
+
+		private final SocketChannel channel;
+		private final ByteBuffer input;
+		private final StringBuilder line;
+		private final Queue<ByteBuffer> output;
+		private final Map<Integer, GameHost.Session> games;
+		private SelectionKey key;
+		private volatile boolean open;
+
+		private Connection(SocketChannel channel){
+			this.channel = channel;
+			this.input = ByteBuffer.allocate(1024);
+			this.line = new StringBuilder();
+			this.output = new ConcurrentLinkedQueue<ByteBuffer>();
+			this.games = new HashMap<Integer, GameHost.Session>();
+			this.open = true;
+		}
+
+		private void read() throws IOException {
+			input.clear();
+			if(channel.read(input) < 0){
+				close();
+				return;
+			}
+			input.flip();
+			while(input.hasRemaining() && open){
+				char c = (char) (input.get() & 0xff);
+				if(c == '\n'){
+					String command = line.toString().trim();
+					line.setLength(0);
+					if(!command.isEmpty()){
+						execute(command);
+					}
+				}
+				else if(line.length() < MAX_LINE){
+					line.append(c);
+				}
+				else{
+					send("error 0 line too long");
+					flush();
+					close();
+				}
+			}
+		}
+
+		private void execute(String command){
+			String[] words = command.split(" +", 4);
+			try{
+				switch(words[0]){
+				case "new":
+					GameHost.Session session = host.openGame();
+					games.put(session.getId(), session);
+					send("game " + session.getId());
+					break;
+				case "go":
+					if(words.length < 4){
+						throw new IllegalArgumentException("usage: go <id> <millis> <fen>");
+					}
+					search(game(words[1]), Long.parseLong(words[2]), words[3]);
+					break;
+				case "stop":
+					// the search replies with its move as usual
+					game(words.length > 1 ? words[1] : "").stop();
+					break;
+				case "close":
+					GameHost.Session closing = game(words.length > 1 ? words[1] : "");
+					games.remove(closing.getId());
+					host.closeGame(closing);
+					send("closed " + closing.getId());
+					break;
+				case "quit":
+					close();
+					break;
+				default:
+					throw new IllegalArgumentException("unknown command " + words[0]);
+				}
+			}
+			catch(RuntimeException e){
+				String id = words.length > 1 && !words[0].equals("new") ? words[1] : "0";
+				send("error " + id + " " + e.getMessage());
+			}
+		}
+
+		private GameHost.Session game(String id){
+			GameHost.Session session = null;
+			try{
+				session = games.get(Integer.parseInt(id));
+			}
+			catch(NumberFormatException e){
+			}
+			if(session == null){
+				throw new IllegalArgumentException("no game " + id);
+			}
+			return session;
+		}
+
+		private void search(GameHost.Session session, long millis, String fen){
+			Position position = new Position(fen);
+			if(millis <= 0){
+				throw new IllegalArgumentException("time must be positive");
+			}
+			if(position.getAllMoves().length == 0){
+				throw new IllegalArgumentException("no legal moves");
+			}
+			session.setPosition(position);
+			int id = session.getId();
+			host.requestMove(session, millis).whenComplete((move, error) -> {
+				if(error == null){
+					send("move " + id + " " + formatMove(move));
+				}
+				// a closed game has no one left to tell
+				else if(!(error instanceof CancellationException)){
+					send("error " + id + " search failed: " + error);
+				}
+			});
+		}
+
+		// safe from any thread, the selector thread writes the reply
+		private void send(String reply){
+			if(!open){
+				return;
+			}
+			output.add(ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII)));
+			flushes.add(this);
+			selector.wakeup();
+		}
+
+		// write what the socket takes now and wait to be writable for the rest
+		private void flush() throws IOException {
+			if(!open){
+				return;
+			}
+			ByteBuffer buffer;
+			while((buffer = output.peek()) != null){
+				channel.write(buffer);
+				if(buffer.hasRemaining()){
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				output.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+		}
+
+		private void close(){
+			if(!open){
+				return;
+			}
+			open = false;
+			for(GameHost.Session session : games.values()){
+				host.closeGame(session);
+			}
+			games.clear();
+			output.clear();
+			try{
+				channel.close();
+			}
+			catch(IOException e){
+			}
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0){
+			System.err.println("usage: GameServer <port> [threads] [games] [hash MB] [depth]");
+			System.exit(1);
+		}
+		int port = Integer.parseInt(args[0]);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int maxGames = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		int hashMB = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+		int depth = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+
+		GameServer server = new GameServer(new GameHost(threads, maxGames, hashMB, depth), port);
+		System.out.println("Serving " + maxGames + " games on port " + server.getPort());
+		server.run();
+	}
+
+}
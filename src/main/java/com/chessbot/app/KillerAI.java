@@ -1,10 +1,10 @@
 package com.chessbot.app;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
-
-import javafx.application.Platform;
-import javafx.scene.control.TextArea;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
 
 import chesspresso.Chess;
 import chesspresso.move.IllegalMoveException;
@@ -13,15 +13,64 @@ import chesspresso.position.Position;
 
 public class KillerAI implements ChessAI {
 	
-	private int ai_color, maxDepth, nodesExplored, transpositionUsed;
-	private HashMap<Long, Entry> transposition;
+	// mates are scored as MATE less the number of plies needed to deliver them,
+	// so faster mates score higher and anything beyond MATE_BOUND is a forced mate
+	static final int MATE = 1000000;
+	static final int MATE_BOUND = MATE - 1000;
+	
+	// move ordering scores, the exchange value is added on top for captures
+	private static final int GOOD_CAPTURE = 1000000;
+	private static final int KILLER = 500000;
+	private static final int LOSING_CAPTURE = -1000000;
+	
+	// no position has more legal moves than this
+	private static final int MAX_MOVES = 256;
+	
+	// entries from the other engines of a distributed search are taken in every 4096 nodes
+	private static final long SHARE_MASK = 4096 - 1;
+	private static final int NO_ROOT_BOUND = Integer.MAX_VALUE;
+	
+	private int ai_color, maxDepth, transpositionUsed;
+	private long nodesExplored, nodeLimit, startTime;
+	private TranspositionTable transposition;
+	private PawnHashTable pawnTable;
+	private long pawnKey;
+	private SearchHistory history;
+	private StaticExchange exchange;
 	private boolean foundMate;
+	private volatile SearchStop searchStop = new SearchStop();
+	
+	// the first iteration always runs to the end, so even a search that is
+	// stopped right away has a move to play
+	private boolean interruptible;
 	private KillerTuple[] killerMoves;
-	private TextArea logView;
+	private int[][] moveScores;
+	private Consumer<String> logView;
+	private SearchListener listener;
+	private NeuralEvaluator network;
+	private EvalStore store;
+	private SearchTrace trace;
+	private int completedDepth, completedScore, passes;
+	
+	// when other engines search the rest of the root moves, see DistributedSearch
+	private short[] rootMoves;
+	// the bound of each depth, an engine a depth behind the others still has its own
+	private final AtomicIntegerArray rootBounds;
+	private EntrySharing sharing;
 	
-	public KillerAI(int depth, TextArea logView){
+	// logView receives the engine's messages, it may be null when running headless
+	public KillerAI(int depth, Consumer<String> logView){
+		this(depth, 64, logView);
+	}
+	
+	// hashMB is the size of the transposition table, which lives off the heap
+	public KillerAI(int depth, int hashMB, Consumer<String> logView){
 		this.maxDepth = depth;
-		this.transposition = new HashMap<Long, Entry>();
+		this.rootBounds = new AtomicIntegerArray(depth + 1);
+		this.transposition = new TranspositionTable(hashMB);
+		this.pawnTable = new PawnHashTable(1 << 14);
+		this.history = new SearchHistory(depth + 1);
+		this.exchange = new StaticExchange();
 		this.logView = logView;
 		
 		// make a list of KillerTuples with an index for each depth
@@ -29,10 +78,20 @@ public class KillerAI implements ChessAI {
 		for(int i = 0; i < maxDepth; i++){
 			killerMoves[i] = new KillerTuple();
 		}
+		
+		// and a buffer for the move ordering scores of each depth
+		moveScores = new int[maxDepth][MAX_MOVES];
+	}
+	
+	// the new size is used from the next search on
+	public void setHashSize(int hashMB){
+		transposition.resize(hashMB);
 	}
 	
 	private void log(String text){
-		Platform.runLater(() -> logView.appendText(text + "\n"));
+		if(logView != null){
+			logView.accept(text);
+		}
 	}
 	
 	public String getMoveString(int move){
@@ -42,13 +101,168 @@ public class KillerAI implements ChessAI {
 	}
 	
 	public short getMove(Position position) {
+		return getMove(position, new SearchStop());
+	}
+	
+	public short getMove(Position position, SearchStop stop) {
+		SearchEvents.Search event = SearchEvents.startSearch();
+		long startNanos = System.nanoTime();
+		searchStop = stop;
 		transpositionUsed = 0;
 		nodesExplored = 0;
+		completedDepth = 0;
+		startTime = System.currentTimeMillis();
 		ai_color = position.getToPlay();
-		return MTDFID(position, maxDepth);
+		pawnKey = PawnHashTable.computeKey(position);
+		pawnTable.resetStats();
+		transposition.resetStats();
+		seedHistory(position);
+		if(network != null){
+			network.reset(position);
+		}
+		
+		// the store holds the best of all the moves, not of a few of them
+		short stored = rootMoves == null ? lookupStore(position) : 0;
+		if(stored != 0){
+			report(position, event, startNanos, stored, true);
+			return stored;
+		}
+		
+		if(trace != null){
+			trace.startSearch(position, maxDepth);
+		}
+		short bestMove = MTDFID(position, maxDepth);
+		// a forced mate is found before the full depth and holds at any depth
+		if(store != null && rootMoves == null && (completedDepth == maxDepth || completedScore >= MATE_BOUND) && completedDepth > 0){
+			try{
+				store.store(position.getHashCode(), completedDepth, completedScore, bestMove);
+			}
+			catch(IOException e){
+				log("Couldn't save to the evaluation store: " + e.getMessage());
+			}
+		}
+		report(position, event, startNanos, bestMove, false);
+		return bestMove;
 		//return TransAlphaBeta(position, maxDepth);
 	}
 	
+	// every search goes to the metrics, and to the flight recorder when it is recording
+	private void report(Position position, SearchEvents.Search event, long startNanos, short move, boolean fromStore){
+		long nanos = Math.max(System.nanoTime() - startNanos, 1);
+		long nodesPerSecond = nodesExplored * 1000000000L / nanos;
+		EngineMetrics.recordSearch(nanos / 1e9, nodesExplored, nodesPerSecond, completedDepth,
+				transposition.getHitRate(), fromStore, completedDepth < maxDepth && completedScore < MATE_BOUND);
+		if(event != null) event.finish(position, move, completedDepth, completedScore, nodesExplored, nodesPerSecond,
+				transposition.getHitRate(), pawnTable.getHitRate(), fromStore);
+	}
+	
+	// the positions of the game since the last capture or pawn move, as far as
+	// the position can undo them, so the search sees repetitions of them
+	private void seedHistory(Position position){
+		history.clear();
+		int undone = SearchHistory.undoReversible(position);
+		for(int i = 0; i < undone; i++){
+			history.push(position.getHashCode());
+			position.redoMove();
+		}
+		history.push(position.getHashCode());
+	}
+	
+	// the stored move for position if it is legal there, otherwise 0
+	private short lookupStore(Position position){
+		if(store == null){
+			return 0;
+		}
+		try{
+			EvalStore.Record record = store.lookup(position.getHashCode(), 0);
+			if(record == null || (record.getDepth() < maxDepth && record.getScore() < MATE_BOUND)){
+				return 0;
+			}
+			short move = record.getMove();
+			if(isLegal(position, move)){
+				log("ChessBot found the position in the evaluation store, depth " + record.getDepth()
+						+ " score " + record.getScore());
+				completedDepth = record.getDepth();
+				completedScore = record.getScore();
+				if(listener != null){
+					listener.iterationComplete(new SearchProgress(record.getDepth(), record.getScore(), move,
+							new short[]{move}, 0, System.currentTimeMillis() - startTime));
+				}
+				return move;
+			}
+		}
+		catch(IOException e){
+			log("Couldn't read the evaluation store: " + e.getMessage());
+		}
+		return 0;
+	}
+	
+	// stops the search in progress, one that hasn't started yet is only stopped
+	// through the SearchStop it is given
+	public void stop(){
+		searchStop.stop();
+	}
+	
+	// evaluate with a neural network instead of the material and pawn terms,
+	// or go back to those with null
+	public void setNetwork(NeuralNetwork weights){
+		network = weights == null ? null : new NeuralEvaluator(weights, maxDepth);
+	}
+	
+	// stop each search after about this many nodes, or never with 0, which makes
+	// the strength the same on any machine and under any load
+	public void setNodeLimit(long nodes){
+		nodeLimit = nodes;
+	}
+	
+	// searches that reach the full depth or find a mate are saved in the store, and
+	// a position already stored at that depth is played from it without searching
+	public void setEvalStore(EvalStore store){
+		this.store = store;
+	}
+	
+	// count where the nodes of each search go and log it, or stop with null
+	public void setTrace(SearchTrace trace){
+		this.trace = trace;
+	}
+	
+	public void setSearchListener(SearchListener listener){
+		this.listener = listener;
+	}
+	
+	// search only these of the root's moves, or all of them with null, for when
+	// other engines search the rest
+	public void setRootMoves(short[] moves){
+		this.rootMoves = moves;
+	}
+	
+	// another engine has a root move scoring score at depth, so an iteration of
+	// that depth here stops once it proves its moves can't do better. the value
+	// it reports then is only an upper bound. safe to call from any thread
+	public void setRootBound(int depth, int score){
+		if(depth > 0 && depth <= maxDepth){
+			rootBounds.set(depth, score);
+		}
+	}
+	
+	// deep entries are offered to the other engines and theirs taken in, or
+	// the table is kept to itself with null
+	public void setEntrySharing(EntrySharing sharing){
+		this.sharing = sharing;
+	}
+	
+	private boolean belowRootBound(int depth, int upperbound){
+		int bound = rootBounds.get(depth);
+		return bound != NO_ROOT_BOUND && upperbound <= bound;
+	}
+	
+	private void storeTransposition(long key, int depth, int value, int bound, short move){
+		transposition.store(key, depth, value, bound, move);
+		if(sharing != null){
+			sharing.stored(key, depth, value, bound, move);
+		}
+	}
+	
 	// iterative deepening functionality built into Minimax search
 	// with Alpha-Beta pruning and transposition table usage
 	private short MTDFID(Position position, int maxDepth){
@@ -56,10 +270,21 @@ public class KillerAI implements ChessAI {
 		short bestMove = 0;
 		Tuple result;
 		foundMate = false;
+		interruptible = false;
+		completedDepth = 0;
 		transposition.clear();
+		for(int i = 0; i <= maxDepth; i++){
+			rootBounds.set(i, NO_ROOT_BOUND);
+		}
 		log("ChessBot computing best move...");
 		
 		for(int i = 1; i <= maxDepth; i++){
+			SearchEvents.Iteration iteration = SearchEvents.startIteration();
+			long iterationNodes = nodesExplored;
+			passes = 0;
+			if(trace != null){
+				trace.startIteration(i);
+			}
 			
 			// oscillation between even and odd depths is handled
 			if(i % 2 == 0){
@@ -71,26 +296,101 @@ public class KillerAI implements ChessAI {
 				firstGuess = result.getValue();
 			}
 			
+			if(iteration != null) iteration.finish(i, result == null ? 0 : result.getValue(), nodesExplored - iterationNodes,
+					passes, !(searchStop.isStopped() && interruptible));
+			
+			// a stopped iteration is traced too, it is often the one that blew up
+			if(trace != null){
+				trace.endIteration(!(searchStop.isStopped() && interruptible), result == null ? 0 : result.getValue(),
+						result == null ? 0 : result.getMove(), nodesExplored, System.currentTimeMillis() - startTime);
+			}
+			
+			// a stopped iteration is unfinished, so keep the move from the last complete one
+			if(searchStop.isStopped() && interruptible){
+				break;
+			}
+			
 			bestMove = result.getMove();
+			interruptible = true;
+			completedDepth = i;
+			completedScore = result.getValue();
+			if(listener != null){
+				listener.iterationComplete(new SearchProgress(i, result.getValue(), bestMove,
+						principalVariation(position, bestMove, i), nodesExplored, System.currentTimeMillis() - startTime));
+			}
 			
 			// found winning move
-			if(foundMate){
+			if(foundMate || searchStop.isStopped()){
 				break;
 			}
 		}
 		
+		if(firstGuess >= MATE_BOUND || secondGuess >= MATE_BOUND){
+			int mateScore = Math.max(firstGuess, secondGuess);
+			log("ChessBot found mate in " + (MATE - mateScore + 1) / 2);
+		}
+		if(trace != null){
+			log(trace.getReport());
+		}
+		log("Pawn hash hit rate: " + (int) (100 * pawnTable.getHitRate()) + "%");
 		log("ChessBot Move: " + getMoveString(Move.getFromSqi(bestMove)) + getMoveString(Move.getToSqi(bestMove)) + "\n");
 		return bestMove;
 	}
 	
+	// the best move followed by the moves stored in the transposition table for
+	// the positions it leads to. with MTD(f) these are the moves of the last
+	// passes through each position, so the line is a good guess rather than exact
+	private short[] principalVariation(Position position, short bestMove, int depth){
+		short[] line = new short[depth];
+		int length = 0;
+		short move = bestMove;
+		try{
+			while(move != 0 && length < depth && isLegal(position, move)){
+				position.doMove(move);
+				line[length++] = move;
+				// not counted, the hit rate is the search's own
+				long slot = transposition.find(position.getHashCode());
+				move = slot >= 0 ? transposition.getMove(slot) : 0;
+			}
+		}
+		catch(IllegalMoveException e){
+		}
+		for(int i = 0; i < length; i++){
+			position.undoMove();
+		}
+		return Arrays.copyOf(line, length);
+	}
+	
+	// a hash collision could give a move from another position
+	private boolean isLegal(Position position, short move){
+		for(short legal : position.getAllMoves()){
+			if(legal == move){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	// the root moves to search that are legal in the position
+	private short[] legalRootMoves(Position position){
+		short[] moves = new short[rootMoves.length];
+		int count = 0;
+		for(short move : rootMoves){
+			if(isLegal(position, move)){
+				moves[count++] = move;
+			}
+		}
+		return Arrays.copyOf(moves, count);
+	}
+	
 	private Tuple MTDF(Position position, int firstGuess, int MaxDepth){
 		int beta, g = firstGuess;
 		int upperbound = Integer.MAX_VALUE;
 		int lowerbound = -Integer.MAX_VALUE;
 		
-		Tuple result = null;
+		Tuple result = null, proven = null;
 		
-		while(lowerbound < upperbound){
+		while(lowerbound < upperbound && !(searchStop.isStopped() && interruptible) && !belowRootBound(MaxDepth, upperbound)){
 			// the window should be targeted above the lower bound
 			if(g == lowerbound){
 				beta = g + 1;
@@ -101,8 +401,12 @@ public class KillerAI implements ChessAI {
 			
 			// get an upper/lower bound on the minimax value by trying AlphaBeta with zero window
 			// with each successive call move the window towards the actual value
+			SearchEvents.Pass pass = SearchEvents.startPass();
+			long passNodes = nodesExplored;
+			passes++;
 			result = TransAlphaBeta(position, beta-1, beta, MaxDepth);
 			g = result.getValue();
+			if(pass != null) pass.finish(MaxDepth, beta, g, nodesExplored - passNodes);
 			
 			// adjust the bounds of the window
 			if(g < beta){
@@ -110,9 +414,15 @@ public class KillerAI implements ChessAI {
 			}
 			else{
 				lowerbound = g;
+				proven = result;
 			}
 		}
 		
+		// a pass that fails high proves its move reaches the lower bound, while one
+		// that fails low only bounds every move from above, so its move can be any
+		if(proven != null && result != null){
+			return new Tuple(proven.getMove(), g);
+		}
 		return result;
 	}
 	
@@ -127,7 +437,14 @@ public class KillerAI implements ChessAI {
 		}
 		*/
 		
+		if(network != null){
+			int value = network.evaluate(position.getToPlay());
+			return position.getToPlay() == ai_color ? value : -value;
+		}
+		
 		int sqi, color, stone, material = 0;
+		int whiteKing = 0, blackKing = 0;
+		long whitePawns = 0, blackPawns = 0;
 		
 		// note that we have added more informative weights to pieces
 		for(int r = 0; r < 8; r++){
@@ -141,6 +458,12 @@ public class KillerAI implements ChessAI {
 					color = -1;
 				}
 				
+				// collect the pawns and kings for the pawn structure terms
+				if(stone == Chess.WHITE_PAWN) whitePawns |= 1L << sqi;
+				if(stone == Chess.BLACK_PAWN) blackPawns |= 1L << sqi;
+				if(stone == Chess.WHITE_KING) whiteKing = sqi;
+				if(stone == Chess.BLACK_KING) blackKing = sqi;
+				
 				// based on the piece type, sum up the utilities
 				if(Math.abs(stone) == Chess.PAWN){
 					material += (100 * color);
@@ -160,6 +483,14 @@ public class KillerAI implements ChessAI {
 			}
 		}
 		
+		// pawn structure rarely changes between leaves, so it comes from the pawn hash
+		// table while the king shelter depends on the king and is added on top
+		int index = pawnTable.probe(pawnKey, whitePawns, blackPawns);
+		int structure = pawnTable.getScore(index)
+				+ PawnHashTable.getShieldScore(whiteKing, Chess.WHITE, whitePawns)
+				+ PawnHashTable.getShieldScore(blackKing, Chess.BLACK, blackPawns);
+		material += (ai_color == Chess.WHITE) ? structure : -structure;
+		
 		// waste of time
 		/* add it, although it will only be used for other terminal positions
 		transposition.put(position.getHashCode(), new Entry(0, material, Entry.EXACT));
@@ -175,19 +506,32 @@ public class KillerAI implements ChessAI {
 			killerMoves[i].clear();
 		}
 		
-		// if it is checkmate, you lose!
-		if(position.isMate()){
+		// if there are no moves it is checkmate or stalemate
+		short [] moves = rootMoves == null ? position.getAllMoves() : legalRootMoves(position);
+		if(moves.length == 0){
 			return null;
 		}
 		
-		short [] moves = position.getAllMoves();
 		short bestMove = moves[new Random().nextInt(moves.length)];
+		if(trace != null) trace.startPass();
 		
 		for(short move : moves){
+			if(searchStop.isStopped() && interruptible){
+				break;
+			}
 			try{	
+				long previousPawnKey = pawnKey;
+				pawnKey = PawnHashTable.updateKey(pawnKey, position, move);
+				if(network != null) network.doMove(position, move);
 				position.doMove(move);
-				value = getMinValue(position, alpha, beta, MaxDepth-1);
+				history.push(position.getHashCode());
+				if(trace != null) trace.enter(1, move, nodesExplored);
+				value = getMinValue(position, alpha, beta, MaxDepth-1, 1);
+				if(trace != null) trace.exit(1, MaxDepth-1, alpha, beta, value, nodesExplored);
+				history.pop();
 				position.undoMove();
+				pawnKey = previousPawnKey;
+				if(network != null) network.undoMove();
 				
 				// update the bestMove if we found a better option
 				if(value > max){
@@ -195,8 +539,10 @@ public class KillerAI implements ChessAI {
 					bestMove = move;
 				}
 				
-				// found winning move
-				if(value == Integer.MAX_VALUE){
+				// found a forced mate, and the fastest one since shorter mates
+				// would have been found at a shallower depth. only a value that
+				// fails high is a mate, one at or below alpha is just a bound
+				if(value >= MATE_BOUND && value >= beta){
 					foundMate = true;
 					break;
 				}
@@ -213,78 +559,141 @@ public class KillerAI implements ChessAI {
 		return new Tuple(bestMove, max);
 	}
 	
-	private int getMinValue(Position position, int alpha, int beta, int depth){
+	// captures that win material in the static exchange come first, best first, then
+	// the killer moves and the quiet moves, and captures that lose material come last
+	private void orderMoves(Position position, short[] moves, int depth){
+		short killer1 = killerMoves[depth].getFirst();
+		short killer2 = killerMoves[depth].getSecond();
+		int[] scores = moveScores[depth];
+		boolean loaded = false;
+		
+		for(int i = 0; i < moves.length; i++){
+			if(Move.isCapturing(moves[i])){
+				// only copy the board if there is a capture to evaluate
+				if(!loaded){
+					exchange.setPosition(position);
+					loaded = true;
+				}
+				int gain = exchange.evaluate(moves[i]);
+				scores[i] = (gain >= 0 ? GOOD_CAPTURE : LOSING_CAPTURE) + gain;
+			}
+			else if(moves[i] == killer1 || moves[i] == killer2){
+				scores[i] = KILLER;
+			}
+			else{
+				scores[i] = 0;
+			}
+		}
 		
-		nodesExplored++;
-		int min = Integer.MAX_VALUE;
+		// insertion sort, move lists are short and mostly quiet moves
+		for(int i = 1; i < moves.length; i++){
+			short move = moves[i];
+			int score = scores[i];
+			int j = i - 1;
+			while(j >= 0 && scores[j] < score){
+				moves[j+1] = moves[j];
+				scores[j+1] = scores[j];
+				j--;
+			}
+			moves[j+1] = move;
+			scores[j+1] = score;
+		}
+	}
+	
+	// mate scores in the transposition table are stored relative to the node
+	// rather than the root, so that they stay correct when found at another ply
+	private int valueToTransposition(int value, int ply){
+		if(value >= MATE_BOUND) return value + ply;
+		if(value <= -MATE_BOUND) return value - ply;
+		return value;
+	}
+	
+	private int valueFromTransposition(int value, int ply){
+		if(value >= MATE_BOUND) return value - ply;
+		if(value <= -MATE_BOUND) return value + ply;
+		return value;
+	}
+	
+	private int getMinValue(Position position, int alpha, int beta, int depth, int ply){
 		
-		// if checkmate, the AI won
-		if(position.isMate()){
-			return Integer.MAX_VALUE;
+		// running out of nodes stops the search like running out of time
+		if(++nodesExplored == nodeLimit){
+			searchStop.stop();
+		}
+		if(sharing != null && (nodesExplored & SHARE_MASK) == 0){
+			sharing.receive(transposition);
+		}
+		
+		// the value doesn't matter once stopped, the iteration is thrown away
+		if(searchStop.isStopped() && interruptible){
+			return 0;
 		}
+		int min = Integer.MAX_VALUE;
 		
-		// stalemate is always 0
-		if(position.isStaleMate()){
+		// repetitions and the fifty move rule are always 0
+		if(history.isDraw(position)){
 			return 0;
 		}
 		
+		// mate distance pruning, at best the opponent is mated right now and at
+		// worst it mates on its next move, so we can't do better than a known mate
+		alpha = Math.max(alpha, -(MATE - ply - 1));
+		beta = Math.min(beta, MATE - ply);
+		if(alpha >= beta){
+			return alpha;
+		}
+		
 		// only bounds matter, exact values aren't accurate with MTD(f)
 		// try to get existing value from transposition table
-		if(transposition.containsKey(position.getHashCode())){
+		long slot = transposition.probe(position.getHashCode());
+		if(slot >= 0){
 			// we only want high quality values, depends on how much depth is left
-			Entry entry = transposition.get(position.getHashCode());
-			if(entry.getQuality() >= depth){
+			int value = valueFromTransposition(transposition.getValue(slot), ply);
+			if(transposition.getDepth(slot) >= depth){
 				// if we found an upper bound that is less than alpha, we can prune
-				if(entry.getBound() == Entry.UPPER && entry.getValue() <= alpha){
+				if(transposition.getBound(slot) == TranspositionTable.UPPER && value <= alpha){
 					transpositionUsed++;
-					return entry.getValue();
+					return value;
 				}
 			}
 		}
 		
-		// don't make a move if you're in to deep
+		// don't make a move if you're in to deep, only look for checkmate
+		// or stalemate if there is no legal move at all
 		if(depth == 0){
+			if(!position.canMove()){
+				return position.isCheck() ? MATE - ply : 0;
+			}
 			return getMaterialValue(position);
 		}
 		
+		// the moves are only generated once, if there are none then being
+		// in check is checkmate (AI won) and otherwise it is stalemate
+		short[] moves = position.getAllMoves();
+		if(moves.length == 0){
+			return position.isCheck() ? MATE - ply : 0;
+		}
+		
 		try{
 			
-			short[] moves = position.getAllMoves();
-			short killer1 = killerMoves[depth].getFirst();
-			short killer2 = killerMoves[depth].getSecond();
-			
-			// make sure they aren't both negative
-			if(killer1 >0 && killer2 > 0){
-				int index = 0;
-				for(int i = 0; i < moves.length; i++){
-					// move the killer move to the front
-					if(moves[i] == killer1){
-						short temp = moves[index];
-						moves[index] = moves[i];
-						moves[i] = temp;
-						index++;
-					}
-					// move the other killer to the front
-					if(moves[i] == killer2){
-						short temp = moves[index];
-						moves[index] = moves[i];
-						moves[i] = temp;
-						index++;
-					}
-				}
-			}
+			orderMoves(position, moves, depth);
 			
 			// try to get the min of the possible moves by recursing with getMaxValue
 			for(short move : moves){
 				// the user makes a move
+				long previousPawnKey = pawnKey;
+				pawnKey = PawnHashTable.updateKey(pawnKey, position, move);
+				if(network != null) network.doMove(position, move);
 				position.doMove(move);
-				min = Math.min(min, getMaxValue(position, alpha, beta, depth-1));
+				history.push(position.getHashCode());
+				if(trace != null) trace.enter(ply+1, move, nodesExplored);
+				int value = getMaxValue(position, alpha, beta, depth-1, ply+1);
+				if(trace != null) trace.exit(ply+1, depth-1, alpha, beta, value, nodesExplored);
+				min = Math.min(min, value);
+				history.pop();
 				position.undoMove();
-				
-				// you lost so stop searching
-				if(min == -Integer.MAX_VALUE){
-					return min;
-				}
+				pawnKey = previousPawnKey;
+				if(network != null) network.undoMove();
 				
 				// update beta
 				if(min < beta){
@@ -294,7 +703,7 @@ public class KillerAI implements ChessAI {
 				// make sure we are still in the window, otherwise we have an upper bound
 				if(min <= alpha){
 					// add as an upper bound
-					transposition.put(position.getHashCode(), new Entry(depth, min, Entry.UPPER));
+					storeTransposition(position.getHashCode(), depth, valueToTransposition(min, ply), TranspositionTable.UPPER, move);
 					
 					// add the killer move
 					killerMoves[depth].addMove(move);
@@ -312,77 +721,85 @@ public class KillerAI implements ChessAI {
 		}
 	}
 	
-	private int getMaxValue(Position position, int alpha, int beta, int depth){
+	private int getMaxValue(Position position, int alpha, int beta, int depth, int ply){
 		
-		nodesExplored++;
-		int max = -Integer.MAX_VALUE;
+		// running out of nodes stops the search like running out of time
+		if(++nodesExplored == nodeLimit){
+			searchStop.stop();
+		}
+		if(sharing != null && (nodesExplored & SHARE_MASK) == 0){
+			sharing.receive(transposition);
+		}
 		
-		// if checkmate, the AI lost
-		if(position.isMate()){
-			return -Integer.MAX_VALUE;
+		// the value doesn't matter once stopped, the iteration is thrown away
+		if(searchStop.isStopped() && interruptible){
+			return 0;
 		}
+		int max = -Integer.MAX_VALUE;
 		
-		// stalemate is always 0
-		if(position.isStaleMate()){
+		// repetitions and the fifty move rule are always 0
+		if(history.isDraw(position)){
 			return 0;
 		}
 		
+		// mate distance pruning, at best the AI mates on its next move and at
+		// worst it is mated right now, so we can't do better than a known mate
+		alpha = Math.max(alpha, -(MATE - ply));
+		beta = Math.min(beta, MATE - ply - 1);
+		if(alpha >= beta){
+			return alpha;
+		}
+		
 		// only bounds matter, exact values aren't accurate with MTD(f)
 		// try to get existing value from transposition table
-		if(transposition.containsKey(position.getHashCode())){
+		long slot = transposition.probe(position.getHashCode());
+		if(slot >= 0){
 			// we only want high quality values, depends on how much depth is left
-			Entry entry = transposition.get(position.getHashCode());
-			if(entry.getQuality() >= depth){
+			int value = valueFromTransposition(transposition.getValue(slot), ply);
+			if(transposition.getDepth(slot) >= depth){
 				// if we found a lower bound that exceeds beta, we can prune
-				if(entry.getBound() == Entry.LOWER && entry.getValue() >= beta){
+				if(transposition.getBound(slot) == TranspositionTable.LOWER && value >= beta){
 					transpositionUsed++;
-					return entry.getValue();
+					return value;
 				}
 			}
 		}
 		
-		// don't make a move if you're in to deep
+		// don't make a move if you're in to deep, only look for checkmate
+		// or stalemate if there is no legal move at all
 		if(depth == 0){
+			if(!position.canMove()){
+				return position.isCheck() ? -(MATE - ply) : 0;
+			}
 			return getMaterialValue(position);
 		}
 		
+		// the moves are only generated once, if there are none then being
+		// in check is checkmate (AI lost) and otherwise it is stalemate
+		short[] moves = position.getAllMoves();
+		if(moves.length == 0){
+			return position.isCheck() ? -(MATE - ply) : 0;
+		}
+		
 		try{
 			
-			short[] moves = position.getAllMoves();
-			short killer1 = killerMoves[depth].getFirst();
-			short killer2 = killerMoves[depth].getSecond();
-			
-			// make sure they aren't both negative
-			if(killer1 >0 && killer2 > 0){
-				int index = 0;
-				for(int i = 0; i < moves.length; i++){
-					// move the killer move to the front
-					if(moves[i] == killer1){
-						short temp = moves[index];
-						moves[index] = moves[i];
-						moves[i] = temp;
-						index++;
-					}
-					// move the other killer to the front
-					if(moves[i] == killer2){
-						short temp = moves[index];
-						moves[index] = moves[i];
-						moves[i] = temp;
-						index++;
-					}
-				}
-			}
+			orderMoves(position, moves, depth);
 			
 			// try to get the max of the possible moves by recursing with getMinValue
 			for(short move : moves){
+				long previousPawnKey = pawnKey;
+				pawnKey = PawnHashTable.updateKey(pawnKey, position, move);
+				if(network != null) network.doMove(position, move);
 				position.doMove(move);
-				max = Math.max(max, getMinValue(position, alpha, beta, depth-1));
+				history.push(position.getHashCode());
+				if(trace != null) trace.enter(ply+1, move, nodesExplored);
+				int value = getMinValue(position, alpha, beta, depth-1, ply+1);
+				if(trace != null) trace.exit(ply+1, depth-1, alpha, beta, value, nodesExplored);
+				max = Math.max(max, value);
+				history.pop();
 				position.undoMove();
-				
-				// you won so stop searching
-				if(max == Integer.MAX_VALUE){
-					return max;
-				}
+				pawnKey = previousPawnKey;
+				if(network != null) network.undoMove();
 				
 				// update alpha
 				if(max > alpha){
@@ -392,7 +809,7 @@ public class KillerAI implements ChessAI {
 				// make sure we are still in the window otherwise we have a lower bound
 				if(max >= beta){
 					// add as a lower bound
-					transposition.put(position.getHashCode(), new Entry(depth, max, Entry.LOWER));
+					storeTransposition(position.getHashCode(), depth, valueToTransposition(max, ply), TranspositionTable.LOWER, move);
 					
 					// add the killer move
 					killerMoves[depth].addMove(move);
@@ -410,25 +827,6 @@ public class KillerAI implements ChessAI {
 		}
 	}
 	
-	// used for transposition tables and what not
-	private class Entry{
-		static final int LOWER = -1;
-		static final int EXACT = 0;
-		static final int UPPER = 1;
-		
-		private int quality, value, bound;
-		private Entry(int quality, int value, int bound){
-			this.quality = quality;
-			this.value = value;
-			this.bound = bound;
-		}
-		
-		private int getValue(){ return value; }
-		private int getQuality(){ return quality; }
-		private int getBound(){ return bound; }
-		
-	}
-	
 	// used for returning best move and associated value
 	private class Tuple{
 		
@@ -0,0 +1,88 @@
+package com.chessbot.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+// bounded ring of log messages that any number of threads add to without locking
+// and a single thread drains. every slot has a sequence number that tells a
+// producer when the slot is free and the consumer when it has been filled, so
+// a slow consumer never blocks a producer: when the ring is full new messages
+// are dropped and counted instead
+public class LogBuffer {
+
+	private String[] messages;
+	private AtomicLongArray sequences;
+	private int mask;
+
+	// the next position producers claim, and the next one the consumer reads
+	private AtomicLong tail;
+	private long head;
+	private AtomicLong dropped;
+
+	// capacity is rounded down to a power of two
+	public LogBuffer(int capacity){
+		int size = Integer.highestOneBit(Math.max(capacity, 2));
+		messages = new String[size];
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++){
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		tail = new AtomicLong();
+		dropped = new AtomicLong();
+	}
+
+	// from any thread, false if the ring was full and the message was dropped
+	public boolean add(String message){
+		long position = tail.get();
+		while(true){
+			int index = (int) position & mask;
+			long sequence = sequences.get(index);
+			if(sequence == position){
+				if(tail.compareAndSet(position, position + 1)){
+					messages[index] = message;
+					// publishes the message to the consumer
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			}
+			else if(sequence < position){
+				// the consumer hasn't read this slot since the last lap
+				dropped.incrementAndGet();
+				return false;
+			}
+			else{
+				// another producer claimed the slot first
+				position = tail.get();
+			}
+		}
+	}
+
+	// only from the consuming thread, passes up to max messages to consumer in the
+	// order they were added and returns how many there were
+	public int drain(Consumer<String> consumer, int max){
+		int count = 0;
+		while(count < max){
+			int index = (int) head & mask;
+			if(sequences.get(index) != head + 1){
+				break;
+			}
+			String message = messages[index];
+			messages[index] = null;
+			// frees the slot for the producers' next lap
+			sequences.set(index, head + mask + 1);
+			head++;
+			consumer.accept(message);
+			count++;
+		}
+		return count;
+	}
+
+	// the messages dropped since the last call
+	public long takeDropped(){
+		return dropped.getAndSet(0);
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.chessbot.app;
+
+import java.util.ArrayDeque;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.TextArea;
+
+// the log text area, which any thread can log to. messages wait in a LogBuffer
+// and are shown in one batch per refresh, at most one refresh per REFRESH_NANOS,
+// so an engine logging every iteration can't flood the FX thread with runLaters.
+// only the last maxMessages messages are kept, so the text stays short and
+// appending to it stays cheap however long the game goes on
+public class LogView extends TextArea {
+
+	private static final long REFRESH_NANOS = 100000000L;
+	private static final int BUFFER_MESSAGES = 4096;
+
+	// a refresh shows at most this many messages, the rest wait for the next
+	private static final int BATCH_MESSAGES = 512;
+
+	private LogBuffer buffer;
+	private int maxMessages;
+
+	// the length of each message shown, with its newline, oldest first
+	private ArrayDeque<Integer> lengths;
+	private StringBuilder batch;
+	private long lastRefresh;
+
+	public LogView(int maxMessages){
+		this.maxMessages = maxMessages;
+		this.buffer = new LogBuffer(BUFFER_MESSAGES);
+		this.lengths = new ArrayDeque<Integer>();
+		this.batch = new StringBuilder();
+
+		// runs on every pulse of the FX thread, but only refreshes at the capped rate
+		new AnimationTimer(){
+			@Override
+			public void handle(long now){
+				if(now - lastRefresh >= REFRESH_NANOS){
+					lastRefresh = now;
+					refresh();
+				}
+			}
+		}.start();
+	}
+
+	// may be called from any thread
+	public void log(String text){
+		buffer.add(text);
+	}
+
+	private void refresh(){
+		batch.setLength(0);
+		buffer.drain(this::add, BATCH_MESSAGES);
+		long dropped = buffer.takeDropped();
+		if(dropped > 0){
+			add("(" + dropped + " log messages dropped)");
+		}
+		if(batch.length() == 0){
+			return;
+		}
+
+		appendText(batch.toString());
+
+		// cut the oldest messages off the top in one go
+		int removed = 0;
+		while(lengths.size() > maxMessages){
+			removed += lengths.poll();
+		}
+		if(removed > 0){
+			deleteText(0, removed);
+			setScrollTop(Double.MAX_VALUE);
+		}
+	}
+
+	private void add(String text){
+		batch.append(text).append('\n');
+		lengths.add(text.length() + 1);
+	}
+
+}
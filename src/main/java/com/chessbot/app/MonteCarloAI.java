@@ -0,0 +1,288 @@
+package com.chessbot.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+// tree parallel Monte Carlo tree search, every worker thread walks the same
+// tree with UCT and a virtual loss keeps them from piling onto one line,
+// so the strength grows smoothly with the time given to the search
+public class MonteCarloAI implements ChessAI {
+
+	private static final double EXPLORATION = 1.4;
+
+	// rewards are summed in fixed point so they can live in an atomic array
+	private static final int SCALE = 1000;
+
+	// a leaf is only expanded once it has been visited this often, which keeps
+	// the pool from filling up with children of nodes that are visited once
+	private static final int EXPAND_VISITS = 4;
+
+	private static final int UNEXPANDED = -1;
+	private static final int EXPANDING = -2;
+	// its children didn't fit in the pool, it stays a leaf for the rest of the search
+	private static final int LEAF = -3;
+
+	private static final int[] PIECE_VALUES = {0, 320, 330, 500, 900, 100, 0};
+
+	private long timeMillis;
+	private int threads, capacity, playoutDepth;
+	private ExecutorService workers;
+	private volatile SearchStop searchStop = new SearchStop();
+
+	// the tree is a pool of nodes stored in parallel arrays, a node's children
+	// are allocated as one contiguous block starting at firstChild
+	private short[] move, childCount;
+	private AtomicIntegerArray firstChild, visits;
+	private AtomicLongArray rewards;
+	private AtomicInteger size;
+
+	public MonteCarloAI(long timeMillis){
+		this(timeMillis, Runtime.getRuntime().availableProcessors(), 1 << 22, 8);
+	}
+
+	// capacity is the number of nodes in the pool, and each leaf is scored by
+	// a random playout of up to playoutDepth plies followed by the evaluation
+	public MonteCarloAI(long timeMillis, int threads, int capacity, int playoutDepth){
+		this.timeMillis = timeMillis;
+		this.threads = threads;
+		this.capacity = capacity;
+		this.playoutDepth = playoutDepth;
+	}
+
+	public short getMove(Position position){
+		return getMove(position, new SearchStop());
+	}
+
+	public short getMove(Position position, SearchStop stop){
+		if(workers == null){
+			move = new short[capacity];
+			childCount = new short[capacity];
+			firstChild = new AtomicIntegerArray(capacity);
+			visits = new AtomicIntegerArray(capacity);
+			rewards = new AtomicLongArray(capacity);
+			size = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "ChessBot MCTS");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		short[] rootMoves = position.getAllMoves();
+		if(rootMoves.length == 0){
+			return 0;
+		}
+
+		// reset the root, the rest of the pool is overwritten as it is reused
+		size.set(1);
+		firstChild.set(0, UNEXPANDED);
+		visits.set(0, 0);
+		rewards.set(0, 0);
+
+		searchStop = stop;
+		long deadline = System.currentTimeMillis() + timeMillis;
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for(int i = 0; i < threads; i++){
+			Position copy = new Position(position);
+			tasks.add(() -> search(copy, deadline));
+		}
+
+		int playouts = 0;
+		try{
+			for(Future<Integer> result : workers.invokeAll(tasks)){
+				playouts += result.get();
+			}
+		}
+		catch(Exception e){
+			e.printStackTrace();
+		}
+
+		// the most visited move is the most reliable one
+		int first = firstChild.get(0);
+		if(first < 0){
+			return rootMoves[0];
+		}
+		int best = first;
+		for(int i = first; i < first + childCount[0]; i++){
+			if(visits.get(i) > visits.get(best)){
+				best = i;
+			}
+		}
+
+		System.out.println("MCTS Playouts: " + playouts + "\nNodes: " + Math.min(size.get(), capacity)
+				+ "\nBest Move Visits: " + visits.get(best) + "\n");
+		return move[best];
+	}
+
+	public void stop(){
+		searchStop.stop();
+	}
+
+	// one worker, repeatedly selecting, expanding, evaluating and backing up
+	// until the time is up, returns the number of playouts made
+	private int search(Position position, long deadline){
+		int[] path = new int[256];
+		int playouts = 0;
+
+		try{
+			while(System.currentTimeMillis() < deadline && !searchStop.isStopped()){
+				int node = 0, length = 0;
+				path[length++] = node;
+				visits.incrementAndGet(node);
+
+				// walk down the expanded part of the tree, each visit counts as a loss
+				// until the real reward is backed up, steering other threads elsewhere
+				while(firstChild.get(node) >= 0 && childCount[node] > 0 && length < path.length - 1){
+					node = select(node);
+					visits.incrementAndGet(node);
+					position.doMove(move[node]);
+					path[length++] = node;
+				}
+
+				double reward;
+				if(firstChild.get(node) >= 0){
+					// expanded without children, checkmate or stalemate
+					reward = position.isCheck() ? 0 : 0.5;
+				}
+				else{
+					if(visits.get(node) >= EXPAND_VISITS){
+						expand(node, position);
+					}
+					reward = evaluate(position);
+				}
+
+				// reward is for the side to move at the leaf, which is the opponent
+				// of whoever made the move into it
+				for(int i = length - 1; i >= 0; i--){
+					reward = 1 - reward;
+					rewards.addAndGet(path[i], (long) (reward * SCALE));
+					if(i > 0){
+						position.undoMove();
+					}
+				}
+				playouts++;
+			}
+		}
+		catch(IllegalMoveException e){
+			System.out.print("You get washed. https://www.youtube.com/watch?v=4UDnTJcjPhY");
+		}
+		return playouts;
+	}
+
+	// UCT, the child with the best upper confidence bound on its reward
+	private int select(int node){
+		int first = firstChild.get(node);
+		double logVisits = Math.log(Math.max(visits.get(node), 1));
+		double bestScore = -1;
+		int best = first;
+
+		for(int i = first; i < first + childCount[node]; i++){
+			int n = visits.get(i);
+			if(n == 0){
+				return i;
+			}
+			double score = (double) rewards.get(i) / SCALE / n + EXPLORATION * Math.sqrt(logVisits / n);
+			if(score > bestScore){
+				bestScore = score;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	// only one thread may expand a node, the others just evaluate it as a leaf
+	private void expand(int node, Position position){
+		if(!firstChild.compareAndSet(node, UNEXPANDED, EXPANDING)){
+			return;
+		}
+
+		short[] moves = position.getAllMoves();
+		int first = reserve(moves.length);
+		if(first < 0){
+			// the pool is full, the node is never tried again
+			firstChild.set(node, LEAF);
+			return;
+		}
+
+		for(int i = 0; i < moves.length; i++){
+			move[first + i] = moves[i];
+			firstChild.set(first + i, UNEXPANDED);
+			visits.set(first + i, 0);
+			rewards.set(first + i, 0);
+		}
+		childCount[node] = (short) moves.length;
+
+		// publishing firstChild last makes the children visible to other threads
+		firstChild.set(node, first);
+	}
+
+	// the first of count free nodes in the pool, or -1 if they don't fit, so
+	// size never passes the capacity however often a full pool is tried
+	private int reserve(int count){
+		while(true){
+			int first = size.get();
+			if(first + count > capacity){
+				return -1;
+			}
+			if(size.compareAndSet(first, first + count)){
+				return first;
+			}
+		}
+	}
+
+	// play a short random game, then turn the material balance for the side
+	// to move into the chance of winning
+	private double evaluate(Position position) throws IllegalMoveException{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int color = position.getToPlay();
+		int plies = 0;
+		double reward;
+
+		while(true){
+			short[] moves = position.getAllMoves();
+			if(moves.length == 0){
+				// the side to move at the end of the playout lost, or it is a draw
+				boolean lost = position.isCheck();
+				boolean sameSide = position.getToPlay() == color;
+				reward = !lost ? 0.5 : (sameSide ? 0 : 1);
+				break;
+			}
+			if(plies == playoutDepth){
+				reward = 1 / (1 + Math.exp(-getMaterialValue(position, color) / 400.0));
+				break;
+			}
+			position.doMove(moves[random.nextInt(moves.length)]);
+			plies++;
+		}
+
+		for(int i = 0; i < plies; i++){
+			position.undoMove();
+		}
+		return reward;
+	}
+
+	private int getMaterialValue(Position position, int color){
+		int material = 0;
+		for(int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++){
+			int stone = position.getStone(sqi);
+			if(stone != Chess.NO_STONE){
+				int value = PIECE_VALUES[Chess.stoneToPiece(stone)];
+				material += Chess.stoneToColor(stone) == color ? value : -value;
+			}
+		}
+		return material;
+	}
+
+}
@@ -3,15 +3,18 @@
 
 package com.chessbot.app;
 
-import javafx.concurrent.Worker;
+import java.util.concurrent.CompletableFuture;
+
 import chesspresso.position.Position;
 
 interface MoveMaker {
 
-	public abstract void start(Position position);
-	public void reset();   // set state to READY
+	// the future completes with the move once it has been decided
+	public abstract CompletableFuture<Short> start(Position position);
+	public void reset();   // ready for the next call to start
 	
-	public Worker.State getState();
-	public short getMove();
+	// decide now, an engine plays the best move it has found so far and
+	// move makers that can't be hurried ignore it
+	public default void stop() {}
 	
 }
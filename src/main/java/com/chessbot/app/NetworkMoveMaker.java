@@ -0,0 +1,192 @@
+package com.chessbot.app;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import chesspresso.position.Position;
+
+// gets its moves from the engine of a GameServer, so a thin client can play
+// against a search running on a bigger machine. the game is opened when this
+// connects and every move sends the whole position, the replies are read on a
+// thread of their own and complete the future of the move being waited for.
+// only one go is sent at a time, a move asked for while an earlier one is still
+// on the server stops that search and is sent once its reply arrives. the gos
+// and their replies are numbered, so the reply to a move no longer waited for
+// is dropped
+public class NetworkMoveMaker implements MoveMaker, Closeable {
+
+	private static final int CONNECT_MILLIS = 5000;
+
+	private final Socket socket;
+	private final BufferedReader reader;
+	private final OutputStream writer;
+	private final long timeLimitMillis;
+	private final int game;
+	private volatile Request pending;
+
+	// go commands sent and move or error replies read for the game, the
+	// pending request is sent when these are equal
+	private int sent, answered;
+
+	// the server searches every move for at most timeLimitMillis
+	public NetworkMoveMaker(String host, int port, long timeLimitMillis) throws IOException {
+		this.timeLimitMillis = timeLimitMillis;
+		this.socket = new Socket();
+		socket.connect(new InetSocketAddress(host, port), CONNECT_MILLIS);
+		socket.setTcpNoDelay(true);
+		this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+		this.writer = socket.getOutputStream();
+
+		send("new");
+		String[] reply = readReply();
+		if(!reply[0].equals("game")){
+			socket.close();
+			throw new IOException("Server refused the game: " + reply[2]);
+		}
+		this.game = Integer.parseInt(reply[1]);
+
+		Thread replies = new Thread(this::readReplies, "ChessBot Network " + host + ":" + port);
+		replies.setDaemon(true);
+		replies.start();
+	}
+
+	@Override
+	public CompletableFuture<Short> start(Position position){
+		Request request = new Request(new Position(position));
+		try{
+			synchronized(this){
+				pending = request;
+				if(sent > answered){
+					send("stop " + game);
+				}
+				else{
+					go(request);
+				}
+			}
+		}
+		catch(IOException e){
+			request.result.completeExceptionally(e);
+		}
+		return request.result;
+	}
+
+	private synchronized void go(Request request) throws IOException {
+		request.number = ++sent;
+		send("go " + game + " " + timeLimitMillis + " " + request.position.getFEN());
+	}
+
+	@Override
+	public void reset(){
+		pending = null;
+	}
+
+	@Override
+	public void stop(){
+		if(pending != null){
+			try{
+				send("stop " + game);
+			}
+			catch(IOException e){
+				fail(e);
+			}
+		}
+	}
+
+	// closes the game on the server along with the connection
+	public void close() throws IOException {
+		try{
+			send("quit");
+		}
+		finally{
+			socket.close();
+		}
+	}
+
+	private synchronized void send(String command) throws IOException {
+		writer.write((command + "\n").getBytes(StandardCharsets.US_ASCII));
+		writer.flush();
+	}
+
+	// the reply split into its kind, the game, and the rest of the line
+	private String[] readReply() throws IOException {
+		String line = reader.readLine();
+		if(line == null){
+			throw new IOException("Server closed the connection");
+		}
+		String[] reply = line.split(" ", 3);
+		if(reply.length < 2){
+			throw new IOException("Bad reply from server: " + line);
+		}
+		return reply.length == 3 ? reply : new String[]{ reply[0], reply[1], "" };
+	}
+
+	private void readReplies(){
+		try{
+			while(true){
+				String[] reply = readReply();
+				boolean move = reply[0].equals("move");
+				if(!(move || reply[0].equals("error")) || !reply[1].equals(Integer.toString(game))){
+					continue;
+				}
+				Request request;
+				synchronized(this){
+					answered++;
+					request = pending;
+					if(request == null){
+						continue;
+					}
+					// the reply to a search that was reset, the move waiting for it goes now
+					if(request.number != answered){
+						if(request.number == 0){
+							go(request);
+						}
+						continue;
+					}
+				}
+				if(!move){
+					request.result.completeExceptionally(new IOException(reply[2]));
+					continue;
+				}
+				short found = GameServer.parseMove(request.position, reply[2]);
+				if(found == 0){
+					request.result.completeExceptionally(new IOException("Server sent an illegal move: " + reply[2]));
+				}
+				else{
+					request.result.complete(found);
+				}
+			}
+		}
+		catch(IOException e){
+			fail(e);
+		}
+	}
+
+	private void fail(IOException e){
+		Request request = pending;
+		if(request != null){
+			request.result.completeExceptionally(e);
+		}
+	}
+
+	// a move asked for, numbered when its go is sent
+	private static class Request {
+
+		private final Position position;
+		private final CompletableFuture<Short> result;
+		private int number;
+
+		private Request(Position position){
+			this.position = position;
+			this.result = new CompletableFuture<Short>();
+		}
+
+	}
+
+}
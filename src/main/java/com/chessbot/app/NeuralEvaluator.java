@@ -0,0 +1,206 @@
+package com.chessbot.app;
+
+import java.util.Random;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// evaluates positions with a NeuralNetwork during a search: the first layer is
+// kept as an accumulator for each side that a move only changes in the two or
+// three inputs it touches, so it is updated with a few additions and pushed on a
+// stack, and undoing a move just pops it. the rest of the network is small and
+// computed in int16 and int32 arithmetic, in plain counted loops over arrays
+// that the JIT can compile to SIMD instructions
+// usage: NeuralEvaluator [weights file], runs the speed benchmark
+public class NeuralEvaluator {
+
+	// hidden values are clipped to this range before the next layer
+	private static final int ACTIVATION_MAX = 127;
+	private static final int HIDDEN_SHIFT = 6;
+	private static final int OUTPUT_DIVISOR = 64;
+
+	private NeuralNetwork network;
+	private int hidden, ply;
+
+	// accumulators[ply][perspective], each seen from that side of the board
+	private short[][][] accumulators;
+	private short[] input, output;
+
+	// maxPly is the most moves that can be made on top of the position given to reset
+	public NeuralEvaluator(NeuralNetwork network, int maxPly){
+		this.network = network;
+		this.hidden = network.hidden;
+		this.accumulators = new short[maxPly + 1][2][hidden];
+		this.input = new short[2 * hidden];
+		this.output = new short[network.hidden2];
+	}
+
+	// input of a stone on a square as seen by perspective, each side sees its
+	// own pieces first and the board from its own end
+	private static int feature(int perspective, int stone, int sqi){
+		int own = Chess.stoneToColor(stone) == perspective ? 0 : 6;
+		int square = perspective == Chess.WHITE ? sqi : sqi ^ 56;
+		return ((own + Chess.stoneToPiece(stone) - 1) << 6) + square;
+	}
+
+	// compute the accumulators from scratch, at the root of a search
+	public void reset(Position position){
+		ply = 0;
+		for(int perspective = 0; perspective < 2; perspective++){
+			short[] accumulator = accumulators[0][perspective];
+			System.arraycopy(network.inputBias, 0, accumulator, 0, hidden);
+			for(int sqi = 0; sqi < 64; sqi++){
+				int stone = position.getStone(sqi);
+				if(stone != Chess.NO_STONE){
+					add(accumulator, feature(perspective, stone, sqi));
+				}
+			}
+		}
+	}
+
+	// update for a move that is about to be made in position
+	public void doMove(Position position, short move){
+		int color = position.getToPlay();
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+		int stone = position.getStone(fromSqi);
+
+		ply++;
+		for(int perspective = 0; perspective < 2; perspective++){
+			short[] accumulator = accumulators[ply][perspective];
+			System.arraycopy(accumulators[ply-1][perspective], 0, accumulator, 0, hidden);
+
+			if(Move.isCastle(move)){
+				// the rook jumps from the corner to the other side of the king
+				int row = Chess.sqiToRow(fromSqi);
+				int rook = Chess.pieceToStone(Chess.ROOK, color);
+				boolean kingside = Chess.sqiToCol(toSqi) == 6;
+				move(accumulator, feature(perspective, stone, fromSqi), feature(perspective, stone, toSqi));
+				move(accumulator, feature(perspective, rook, Chess.coorToSqi(kingside ? 7 : 0, row)),
+						feature(perspective, rook, Chess.coorToSqi(kingside ? 5 : 3, row)));
+				continue;
+			}
+
+			int placed = Move.isPromotion(move) ? Chess.pieceToStone(Move.getPromotionPiece(move), color) : stone;
+			move(accumulator, feature(perspective, stone, fromSqi), feature(perspective, placed, toSqi));
+
+			if(Move.isEPMove(move)){
+				int captureSqi = Chess.coorToSqi(Chess.sqiToCol(toSqi), Chess.sqiToRow(fromSqi));
+				subtract(accumulator, feature(perspective, Chess.pieceToStone(Chess.PAWN, Chess.otherPlayer(color)), captureSqi));
+			}
+			else if(Move.isCapturing(move)){
+				subtract(accumulator, feature(perspective, position.getStone(toSqi), toSqi));
+			}
+		}
+	}
+
+	public void undoMove(){
+		ply--;
+	}
+
+	private void add(short[] accumulator, int feature){
+		short[] weights = network.inputWeights;
+		int row = feature * hidden;
+		for(int i = 0; i < hidden; i++){
+			accumulator[i] += weights[row + i];
+		}
+	}
+
+	private void subtract(short[] accumulator, int feature){
+		short[] weights = network.inputWeights;
+		int row = feature * hidden;
+		for(int i = 0; i < hidden; i++){
+			accumulator[i] -= weights[row + i];
+		}
+	}
+
+	// a piece leaving one input for another, in a single pass
+	private void move(short[] accumulator, int from, int to){
+		short[] weights = network.inputWeights;
+		int fromRow = from * hidden, toRow = to * hidden;
+		for(int i = 0; i < hidden; i++){
+			accumulator[i] += weights[toRow + i] - weights[fromRow + i];
+		}
+	}
+
+	// the value of the current position in centipawns for toPlay
+	public int evaluate(int toPlay){
+		short[] us = accumulators[ply][toPlay];
+		short[] them = accumulators[ply][Chess.otherPlayer(toPlay)];
+
+		for(int i = 0; i < hidden; i++){
+			input[i] = (short) Math.min(Math.max(us[i], 0), ACTIVATION_MAX);
+			input[hidden + i] = (short) Math.min(Math.max(them[i], 0), ACTIVATION_MAX);
+		}
+
+		short[] weights = network.hiddenWeights;
+		int inputs = 2 * hidden;
+		for(int j = 0; j < output.length; j++){
+			int sum = 0, row = j * inputs;
+			for(int i = 0; i < inputs; i++){
+				sum += input[i] * weights[row + i];
+			}
+			sum = (sum + network.hiddenBias[j]) >> HIDDEN_SHIFT;
+			output[j] = (short) Math.min(Math.max(sum, 0), ACTIVATION_MAX);
+		}
+
+		int value = network.outputBias;
+		for(int j = 0; j < output.length; j++){
+			value += output[j] * network.outputWeights[j];
+		}
+		return value / OUTPUT_DIVISOR;
+	}
+
+	// evaluations per second along random games, with the accumulator updated
+	// for every legal move against computing it from scratch
+	public static void main(String[] args) throws Exception {
+		NeuralNetwork network = args.length > 0 ? NeuralNetwork.load(args[0]) : NeuralNetwork.random(256, 32, 1);
+		NeuralEvaluator evaluator = new NeuralEvaluator(network, 1);
+		Random random = new Random(1);
+		long evaluations = 0, refreshes = 0, checksum = 0;
+		long incrementalNanos = 0, refreshNanos = 0;
+
+		for(int game = 0; game < 200; game++){
+			Position position = Position.createInitialPosition();
+			for(int ply = 0; ply < 80; ply++){
+				short[] moves = position.getAllMoves();
+				if(moves.length == 0){
+					break;
+				}
+
+				long begin = System.nanoTime();
+				evaluator.reset(position);
+				for(short move : moves){
+					evaluator.doMove(position, move);
+					checksum += evaluator.evaluate(Chess.otherPlayer(position.getToPlay()));
+					evaluator.undoMove();
+				}
+				incrementalNanos += System.nanoTime() - begin;
+				evaluations += moves.length;
+
+				begin = System.nanoTime();
+				for(int i = 0; i < 8; i++){
+					evaluator.reset(position);
+					checksum += evaluator.evaluate(position.getToPlay());
+				}
+				refreshNanos += System.nanoTime() - begin;
+				refreshes += 8;
+
+				try{
+					position.doMove(moves[random.nextInt(moves.length)]);
+				}
+				catch(IllegalMoveException e){
+					System.out.print("You get washed. https://www.youtube.com/watch?v=4UDnTJcjPhY");
+				}
+			}
+		}
+
+		System.out.println("Network: " + NeuralNetwork.INPUTS + "x" + network.hidden + " -> " + network.hidden2 + " -> 1"
+				+ "\nIncremental evals/s: " + evaluations * 1000000000L / Math.max(incrementalNanos, 1)
+				+ "\nFull refresh evals/s: " + refreshes * 1000000000L / Math.max(refreshNanos, 1)
+				+ "\nChecksum: " + checksum);
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.chessbot.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// the weights of a small quantized evaluation network: 768 inputs, one for each
+// piece of either color on each square, into an accumulator of hidden values
+// for each side, then one hidden layer and a single output in centipawns
+// the weights are shared, a NeuralEvaluator holds the state of one search
+//
+// the weights file is big endian: the int 0x43424E4E, the two hidden layer sizes,
+// then the input weights feature by feature and the input biases as shorts, the
+// hidden weights neuron by neuron as shorts, the hidden biases as ints, the
+// output weights as shorts and the output bias as an int
+public class NeuralNetwork {
+
+	static final int INPUTS = 2 * 6 * 64;
+	private static final int MAGIC = 0x43424E4E;
+
+	final int hidden, hidden2;
+	final short[] inputWeights, inputBias;
+	final short[] hiddenWeights;
+	final int[] hiddenBias;
+	final short[] outputWeights;
+	final int outputBias;
+
+	private NeuralNetwork(int hidden, int hidden2, short[] inputWeights, short[] inputBias,
+			short[] hiddenWeights, int[] hiddenBias, short[] outputWeights, int outputBias){
+		this.hidden = hidden;
+		this.hidden2 = hidden2;
+		this.inputWeights = inputWeights;
+		this.inputBias = inputBias;
+		this.hiddenWeights = hiddenWeights;
+		this.hiddenBias = hiddenBias;
+		this.outputWeights = outputWeights;
+		this.outputBias = outputBias;
+	}
+
+	public static NeuralNetwork load(String file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(file)));
+		if(buffer.getInt() != MAGIC){
+			throw new IOException("Not a network weights file: " + file);
+		}
+		int hidden = buffer.getInt();
+		int hidden2 = buffer.getInt();
+
+		short[] inputWeights = readShorts(buffer, INPUTS * hidden);
+		short[] inputBias = readShorts(buffer, hidden);
+		short[] hiddenWeights = readShorts(buffer, hidden2 * 2 * hidden);
+		int[] hiddenBias = new int[hidden2];
+		buffer.asIntBuffer().get(hiddenBias);
+		buffer.position(buffer.position() + 4 * hidden2);
+		short[] outputWeights = readShorts(buffer, hidden2);
+		int outputBias = buffer.getInt();
+
+		return new NeuralNetwork(hidden, hidden2, inputWeights, inputBias, hiddenWeights, hiddenBias,
+				outputWeights, outputBias);
+	}
+
+	private static short[] readShorts(ByteBuffer buffer, int count){
+		short[] values = new short[count];
+		buffer.asShortBuffer().get(values);
+		buffer.position(buffer.position() + 2 * count);
+		return values;
+	}
+
+	public void save(String file) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+			out.writeInt(MAGIC);
+			out.writeInt(hidden);
+			out.writeInt(hidden2);
+			for(short weight : inputWeights) out.writeShort(weight);
+			for(short bias : inputBias) out.writeShort(bias);
+			for(short weight : hiddenWeights) out.writeShort(weight);
+			for(int bias : hiddenBias) out.writeInt(bias);
+			for(short weight : outputWeights) out.writeShort(weight);
+			out.writeInt(outputBias);
+		}
+	}
+
+	// small random weights, only good for measuring speed
+	public static NeuralNetwork random(int hidden, int hidden2, long seed){
+		Random random = new Random(seed);
+		short[] inputWeights = new short[INPUTS * hidden];
+		short[] inputBias = new short[hidden];
+		short[] hiddenWeights = new short[hidden2 * 2 * hidden];
+		int[] hiddenBias = new int[hidden2];
+		short[] outputWeights = new short[hidden2];
+
+		for(int i = 0; i < inputWeights.length; i++) inputWeights[i] = (short) (random.nextInt(64) - 32);
+		for(int i = 0; i < inputBias.length; i++) inputBias[i] = (short) random.nextInt(64);
+		for(int i = 0; i < hiddenWeights.length; i++) hiddenWeights[i] = (short) (random.nextInt(64) - 32);
+		for(int i = 0; i < outputWeights.length; i++) outputWeights[i] = (short) (random.nextInt(256) - 128);
+
+		return new NeuralNetwork(hidden, hidden2, inputWeights, inputBias, hiddenWeights, hiddenBias, outputWeights, 0);
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.chessbot.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.position.Position;
+
+// one game read by PGNStream, the same object is reused for every game a parser
+// reads so nothing is allocated per game unless asked for, call copy to keep one
+// the tags are kept as raw bytes and only turned into strings by getTag
+public class PGNGame {
+
+	private byte[] text;
+	private int length;
+	private int[] nameStart, nameEnd, valueStart, valueEnd;
+	private int tagCount;
+
+	private short[] moves;
+	private int moveCount;
+	private int result;
+
+	public PGNGame(){
+		text = new byte[1024];
+		nameStart = new int[32];
+		nameEnd = new int[32];
+		valueStart = new int[32];
+		valueEnd = new int[32];
+		moves = new short[256];
+	}
+
+	void clear(){
+		length = 0;
+		tagCount = 0;
+		moveCount = 0;
+		result = Chess.NO_RES;
+	}
+
+	// the tag name and value are appended to the text as they are read
+	void startTag(){
+		if(tagCount == nameStart.length){
+			nameStart = Arrays.copyOf(nameStart, 2 * tagCount + 8);
+			nameEnd = Arrays.copyOf(nameEnd, 2 * tagCount + 8);
+			valueStart = Arrays.copyOf(valueStart, 2 * tagCount + 8);
+			valueEnd = Arrays.copyOf(valueEnd, 2 * tagCount + 8);
+		}
+		nameStart[tagCount] = length;
+	}
+
+	void endTagName(){ nameEnd[tagCount] = length; valueStart[tagCount] = length; }
+	void endTag(){ valueEnd[tagCount++] = length; }
+
+	void append(int c){
+		if(length == text.length){
+			text = Arrays.copyOf(text, 2 * length + 64);
+		}
+		text[length++] = (byte) c;
+	}
+
+	void addMove(short move){
+		if(moveCount == moves.length){
+			moves = Arrays.copyOf(moves, 2 * moveCount + 64);
+		}
+		moves[moveCount++] = move;
+	}
+
+	void setResult(int result){
+		this.result = result;
+	}
+
+	// true if the name of the last tag read is name
+	boolean lastTagIs(String name){
+		return tagCount > 0 && equals(nameStart[tagCount-1], nameEnd[tagCount-1], name);
+	}
+
+	boolean lastTagValueIs(String value){
+		return tagCount > 0 && equals(valueStart[tagCount-1], valueEnd[tagCount-1], value);
+	}
+
+	private boolean equals(int start, int end, String name){
+		if(end - start != name.length()){
+			return false;
+		}
+		for(int i = 0; i < name.length(); i++){
+			if(text[start + i] != name.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// the value of a tag, or null if the game doesn't have it
+	public String getTag(String name){
+		for(int i = 0; i < tagCount; i++){
+			if(equals(nameStart[i], nameEnd[i], name)){
+				return new String(text, valueStart[i], valueEnd[i] - valueStart[i], StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	// one of chesspresso's RES_ constants, from the movetext or else the Result tag
+	public int getResult(){ return result; }
+
+	public int getMoveCount(){ return moveCount; }
+	public short getMove(int ply){ return moves[ply]; }
+
+	public short[] getMoves(){
+		return Arrays.copyOf(moves, moveCount);
+	}
+
+	// the position the game started from, the usual one unless there is a FEN tag
+	public Position getStartPosition(){
+		String fen = getTag("FEN");
+		return fen != null ? new Position(fen) : Position.createInitialPosition();
+	}
+
+	public PGNGame copy(){
+		PGNGame copy = new PGNGame();
+		copy.text = Arrays.copyOf(text, length);
+		copy.length = length;
+		copy.nameStart = Arrays.copyOf(nameStart, tagCount);
+		copy.nameEnd = Arrays.copyOf(nameEnd, tagCount);
+		copy.valueStart = Arrays.copyOf(valueStart, tagCount);
+		copy.valueEnd = Arrays.copyOf(valueEnd, tagCount);
+		copy.tagCount = tagCount;
+		copy.moves = getMoves();
+		copy.moveCount = moveCount;
+		copy.result = result;
+		return copy;
+	}
+
+}
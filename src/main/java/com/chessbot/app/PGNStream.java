@@ -0,0 +1,455 @@
+package com.chessbot.app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// streams the games of a PGN file of any size: the file is memory mapped a window
+// at a time and tokenized byte by byte, the moves are resolved against the legal
+// moves without building strings, and each game is handed on in a PGNGame that
+// is reused for the next one, so the heap in use doesn't grow with the file
+// the file can be split at [Event tags for parsing in parallel
+public class PGNStream implements AutoCloseable {
+
+	// how much of the file is mapped at once by each parser
+	private static final long WINDOW = 64L * 1024 * 1024;
+
+	// a split is only worth it with at least this much left to parse
+	private static final long MIN_SPLIT = 1024 * 1024;
+
+	private static final byte[] EVENT = "\n[Event ".getBytes();
+
+	// told about every position of every game, before the move played in it
+	public interface PositionHandler {
+		public void position(PGNGame game, Position position, short move, int ply);
+	}
+
+	private FileChannel channel;
+	private long size;
+	private AtomicLong games, errors;
+
+	public PGNStream(String file) throws IOException {
+		channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		size = channel.size();
+		games = new AtomicLong();
+		errors = new AtomicLong();
+	}
+
+	// the games in file order, or split between threads if parallel, the PGNGame
+	// handed on is reused by the parser so copy it to keep it past the next one
+	public Stream<PGNGame> games(boolean parallel){
+		return StreamSupport.stream(new Parser(0, size, null), parallel);
+	}
+
+	public void forEach(Consumer<PGNGame> action){
+		new Parser(0, size, null).forEachRemaining(action);
+	}
+
+	// every position of every game, the handler must be thread safe if parallel
+	public void forEachPosition(PositionHandler handler, boolean parallel){
+		StreamSupport.stream(new Parser(0, size, handler), parallel).forEach(game -> {});
+	}
+
+	public long getGames(){ return games.get(); }
+
+	// games skipped because of a move that couldn't be read or isn't legal
+	public long getErrors(){ return errors.get(); }
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// parses the games starting in [start, end) of the file, a game that starts
+	// in the range is read to its end even if that is past the range
+	private class Parser implements Spliterator<PGNGame> {
+
+		private long offset, end;
+		private PositionHandler handler;
+
+		private MappedByteBuffer window;
+		private long windowStart, windowEnd;
+
+		private PGNGame game;
+		private byte[] token;
+		private int tokenLength;
+
+		private Parser(long start, long end, PositionHandler handler){
+			this.offset = start;
+			this.end = end;
+			this.handler = handler;
+			this.game = new PGNGame();
+			this.token = new byte[64];
+		}
+
+		private int peek(){
+			if(offset >= size){
+				return -1;
+			}
+			if(offset < windowStart || offset >= windowEnd){
+				map(offset);
+			}
+			return window.get((int) (offset - windowStart)) & 0xFF;
+		}
+
+		private int read(){
+			int c = peek();
+			if(c >= 0){
+				offset++;
+			}
+			return c;
+		}
+
+		private void map(long position){
+			try{
+				windowStart = position;
+				windowEnd = Math.min(position + WINDOW, size);
+				window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+			}
+			catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public boolean tryAdvance(Consumer<? super PGNGame> action){
+			while(true){
+				skipWhitespace();
+				if(offset >= end || peek() < 0){
+					return false;
+				}
+				if(parseGame()){
+					games.incrementAndGet();
+					action.accept(game);
+					return true;
+				}
+				errors.incrementAndGet();
+			}
+		}
+
+		// split off the second half of what is left, at the first [Event tag
+		public Spliterator<PGNGame> trySplit(){
+			if(end - offset < 2 * MIN_SPLIT){
+				return null;
+			}
+			long middle = offset + (end - offset) / 2;
+			long boundary = findEvent(middle);
+			if(boundary < 0 || boundary >= end){
+				return null;
+			}
+			Parser second = new Parser(boundary, end, handler);
+			end = boundary;
+			return second;
+		}
+
+		// the offset of the first [Event tag at the start of a line from position on
+		private long findEvent(long position){
+			long saved = offset;
+			offset = position;
+			int matched = 0;
+			long found = -1;
+			int c;
+			while(offset < end && (c = read()) >= 0){
+				matched = c == EVENT[matched] ? matched + 1 : (c == EVENT[0] ? 1 : 0);
+				if(matched == EVENT.length){
+					found = offset - EVENT.length + 1;
+					break;
+				}
+			}
+			offset = saved;
+			return found;
+		}
+
+		public long estimateSize(){
+			// games in PGN files average around a kilobyte
+			return Math.max((end - offset) / 1024, 1);
+		}
+
+		public int characteristics(){
+			return ORDERED | NONNULL;
+		}
+
+		private void skipWhitespace(){
+			int c;
+			while((c = peek()) >= 0 && (c <= ' ' || c == 0xEF || c == 0xBB || c == 0xBF)){
+				offset++;
+			}
+		}
+
+		private void skipLine(){
+			int c;
+			while((c = read()) >= 0 && c != '\n'){
+			}
+		}
+
+		// returns false if the game had a bad move, the rest of it is skipped
+		private boolean parseGame(){
+			game.clear();
+
+			while(peek() == '['){
+				parseTag();
+				skipWhitespace();
+			}
+
+			Position position;
+			try{
+				position = game.getStartPosition();
+			}
+			catch(RuntimeException e){
+				skipMovetext();
+				return false;
+			}
+
+			int depth = 0;
+			while(true){
+				skipWhitespace();
+				int c = peek();
+				if(c < 0 || (c == '[' && depth == 0)){
+					// the next game started without a result
+					return true;
+				}
+				offset++;
+
+				if(c == '{'){
+					while((c = read()) >= 0 && c != '}'){
+					}
+				}
+				else if(c == ';' || c == '%'){
+					skipLine();
+				}
+				else if(c == '('){
+					depth++;
+				}
+				else if(c == ')'){
+					depth--;
+				}
+				else if(c == '$'){
+					readToken();
+				}
+				else if(depth > 0){
+					// moves of a variation aren't resolved
+					readToken();
+				}
+				else if(c == '*'){
+					game.setResult(Chess.RES_NOT_FINISHED);
+					return true;
+				}
+				else{
+					offset--;
+					readToken();
+					int start = skipMoveNumber();
+					if(start == tokenLength){
+						continue;
+					}
+					int result = getResult(start);
+					if(result != Chess.NO_RES){
+						game.setResult(result);
+						return true;
+					}
+
+					short move = resolve(position, start);
+					if(move == Move.NO_MOVE){
+						skipMovetext();
+						return false;
+					}
+					if(handler != null){
+						handler.position(game, position, move, game.getMoveCount());
+					}
+					game.addMove(move);
+					try{
+						position.doMove(move);
+					}
+					catch(IllegalMoveException e){
+						skipMovetext();
+						return false;
+					}
+				}
+			}
+		}
+
+		// [Name "value"], with backslash escapes in the value
+		private void parseTag(){
+			offset++;
+			game.startTag();
+			int c;
+			while((c = peek()) >= 0 && c > ' ' && c != '"' && c != ']'){
+				game.append(read());
+			}
+			game.endTagName();
+			while((c = read()) >= 0 && c != '"' && c != ']' && c != '\n'){
+			}
+			if(c == '"'){
+				while((c = read()) >= 0 && c != '"' && c != '\n'){
+					game.append(c == '\\' ? read() : c);
+				}
+				while(c >= 0 && c != ']' && c != '\n'){
+					c = read();
+				}
+			}
+			game.endTag();
+
+			if(game.lastTagIs("Result")){
+				if(game.lastTagValueIs("1-0")) game.setResult(Chess.RES_WHITE_WINS);
+				else if(game.lastTagValueIs("0-1")) game.setResult(Chess.RES_BLACK_WINS);
+				else if(game.lastTagValueIs("1/2-1/2")) game.setResult(Chess.RES_DRAW);
+				else if(game.lastTagValueIs("*")) game.setResult(Chess.RES_NOT_FINISHED);
+			}
+		}
+
+		// after a bad move, move on to the next game's tags
+		private void skipMovetext(){
+			int c;
+			int previous = '\n';
+			while((c = peek()) >= 0){
+				if(c == '[' && previous == '\n'){
+					return;
+				}
+				previous = c;
+				offset++;
+			}
+		}
+
+		private void readToken(){
+			tokenLength = 0;
+			int c;
+			while((c = peek()) > ' ' && c != '{' && c != '}' && c != '(' && c != ')' && c != ';' && c != '[' && c != '$'){
+				if(tokenLength < token.length){
+					token[tokenLength++] = (byte) c;
+				}
+				offset++;
+			}
+		}
+
+		// skip a move number such as 12. or 12... in front of a move, returns
+		// where the rest of the token starts
+		private int skipMoveNumber(){
+			int i = 0;
+			while(i < tokenLength && token[i] >= '0' && token[i] <= '9'){
+				i++;
+			}
+			if(i == 0 || i == tokenLength || token[i] != '.'){
+				return 0;
+			}
+			while(i < tokenLength && token[i] == '.'){
+				i++;
+			}
+			return i;
+		}
+
+		private int getResult(int start){
+			int length = tokenLength - start;
+			if(is(start, "1-0")) return Chess.RES_WHITE_WINS;
+			if(is(start, "0-1")) return Chess.RES_BLACK_WINS;
+			if(is(start, "1/2-1/2")) return Chess.RES_DRAW;
+			if(length == 1 && token[start] == '*') return Chess.RES_NOT_FINISHED;
+			return Chess.NO_RES;
+		}
+
+		private boolean is(int start, String text){
+			if(tokenLength - start != text.length()){
+				return false;
+			}
+			for(int i = 0; i < text.length(); i++){
+				if(token[start + i] != text.charAt(i)){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// the legal move the SAN in the token describes, or NO_MOVE
+		private short resolve(Position position, int start){
+			int last = tokenLength;
+			while(last > start && (token[last-1] == '+' || token[last-1] == '#' || token[last-1] == '!' || token[last-1] == '?')){
+				last--;
+			}
+			if(last - start < 2){
+				return Move.NO_MOVE;
+			}
+
+			if(token[start] == 'O' || token[start] == '0'){
+				boolean longCastle = last - start >= 5;
+				for(short move : position.getAllMoves()){
+					if(longCastle ? Move.isLongCastle(move) : Move.isShortCastle(move)){
+						return move;
+					}
+				}
+				return Move.NO_MOVE;
+			}
+
+			int piece = Chess.PAWN;
+			int i = start;
+			if(token[i] >= 'A' && token[i] <= 'Z'){
+				piece = Chess.charToPiece((char) token[i]);
+				i++;
+			}
+
+			// promotions are written e8=Q or e8Q
+			int promotion = Chess.NO_PIECE;
+			if(last - i >= 3 && token[last-1] >= 'A' && token[last-1] <= 'Z'){
+				promotion = Chess.charToPiece((char) token[last-1]);
+				last -= token[last-2] == '=' ? 2 : 1;
+			}
+
+			if(last - i < 2){
+				return Move.NO_MOVE;
+			}
+			int toCol = Chess.charToCol((char) token[last-2]);
+			int toRow = Chess.charToRow((char) token[last-1]);
+			if(toCol < 0 || toRow < 0){
+				return Move.NO_MOVE;
+			}
+			int toSqi = Chess.coorToSqi(toCol, toRow);
+
+			// whatever is left between the piece and the target square says which
+			// of several pieces moves
+			int fromCol = Chess.NO_COL, fromRow = Chess.NO_ROW;
+			for(int j = i; j < last - 2; j++){
+				if(token[j] >= 'a' && token[j] <= 'h') fromCol = token[j] - 'a';
+				if(token[j] >= '1' && token[j] <= '8') fromRow = token[j] - '1';
+			}
+
+			// chesspresso finds the move the way its own PGN reader does, without
+			// generating every legal move, which is left for when that fails
+			short direct = piece == Chess.PAWN
+					? position.getPawnMove(fromCol, toSqi, promotion)
+					: position.getPieceMove(piece, fromCol, fromRow, toSqi);
+			if(direct != Move.NO_MOVE && direct != Move.ILLEGAL_MOVE){
+				return direct;
+			}
+
+			short found = Move.NO_MOVE;
+			for(short move : position.getAllMoves()){
+				if(Move.getToSqi(move) != toSqi || Move.isCastle(move)){
+					continue;
+				}
+				int fromSqi = Move.getFromSqi(move);
+				if(Chess.stoneToPiece(position.getStone(fromSqi)) != piece
+						|| (fromCol != Chess.NO_COL && Chess.sqiToCol(fromSqi) != fromCol)
+						|| (fromRow != Chess.NO_ROW && Chess.sqiToRow(fromSqi) != fromRow)
+						|| (Move.isPromotion(move) ? Move.getPromotionPiece(move) != promotion : promotion != Chess.NO_PIECE)){
+					continue;
+				}
+				if(found != Move.NO_MOVE){
+					// ambiguous
+					return Move.NO_MOVE;
+				}
+				found = move;
+			}
+			return found;
+		}
+
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.chessbot.app;
+
+import java.util.Random;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// fixed size cache of pawn structure evaluations, keyed on a zobrist key
+// that only covers the pawns so that it can be maintained incrementally
+// alongside the position's own hash code
+public class PawnHashTable {
+
+	// pawn structure weights in centipawns, from white's point of view
+	private static final int DOUBLED = -10;
+	private static final int ISOLATED = -15;
+	private static final int SHIELD = 10;
+	private static final int[] PASSED = {0, 5, 10, 20, 35, 60, 100, 0};
+
+	private static final long[][] ZOBRIST = new long[2][64];
+	private static final long BASE_KEY;
+
+	private static final long[] FILES = new long[8];
+	private static final long[] ADJACENT_FILES = new long[8];
+	private static final long[][] PASSED_MASKS = new long[2][64];
+	private static final long[][] SHIELD_MASKS = new long[2][64];
+
+	static {
+		// fixed seed so keys are reproducible between runs
+		Random random = new Random(0x5DEECE66DL);
+		for(int color = 0; color < 2; color++){
+			for(int sqi = 0; sqi < 64; sqi++){
+				ZOBRIST[color][sqi] = random.nextLong();
+			}
+		}
+		// a position without pawns should still have a non-empty key
+		BASE_KEY = random.nextLong();
+
+		for(int c = 0; c < 8; c++){
+			for(int r = 0; r < 8; r++){
+				FILES[c] |= 1L << Chess.coorToSqi(c, r);
+			}
+		}
+		for(int c = 0; c < 8; c++){
+			if(c > 0) ADJACENT_FILES[c] |= FILES[c-1];
+			if(c < 7) ADJACENT_FILES[c] |= FILES[c+1];
+		}
+
+		for(int sqi = 0; sqi < 64; sqi++){
+			int col = Chess.sqiToCol(sqi);
+			int row = Chess.sqiToRow(sqi);
+			long files = FILES[col] | ADJACENT_FILES[col];
+
+			// squares in front of the pawn on its own and adjacent files
+			for(int r = 0; r < 8; r++){
+				long rank = 0xFFL << (8 * r);
+				if(r > row) PASSED_MASKS[Chess.WHITE][sqi] |= files & rank;
+				if(r < row) PASSED_MASKS[Chess.BLACK][sqi] |= files & rank;
+
+				// the two ranks right in front of a king
+				if(r > row && r <= row + 2) SHIELD_MASKS[Chess.WHITE][sqi] |= files & rank;
+				if(r < row && r >= row - 2) SHIELD_MASKS[Chess.BLACK][sqi] |= files & rank;
+			}
+		}
+	}
+
+	private final int mask;
+	private final long[] keys;
+	private final int[] scores;
+	private final long[] passed;
+	private long probes, hits;
+
+	// size is rounded down to a power of two so the key can be masked
+	public PawnHashTable(int size){
+		int entries = Integer.highestOneBit(Math.max(size, 1));
+		this.mask = entries - 1;
+		this.keys = new long[entries];
+		this.scores = new int[entries];
+		this.passed = new long[2 * entries];
+	}
+
+	// build the pawn key from scratch, only needed at the root of a search
+	public static long computeKey(Position position){
+		long key = BASE_KEY;
+		for(int sqi = 0; sqi < 64; sqi++){
+			int stone = position.getStone(sqi);
+			if(Math.abs(stone) == Chess.PAWN){
+				key ^= ZOBRIST[Chess.stoneToColor(stone)][sqi];
+			}
+		}
+		return key;
+	}
+
+	// update the pawn key for a move that is about to be made in position
+	public static long updateKey(long key, Position position, short move){
+		if(Move.isCastle(move)){
+			return key;
+		}
+
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+		int color = position.getToPlay();
+		int opponent = Chess.otherPlayer(color);
+
+		if(Math.abs(position.getStone(fromSqi)) == Chess.PAWN){
+			key ^= ZOBRIST[color][fromSqi];
+
+			// a promoted pawn leaves the pawn structure
+			if(!Move.isPromotion(move)){
+				key ^= ZOBRIST[color][toSqi];
+			}
+
+			// the pawn taken en passant is beside the from square
+			if(Move.isEPMove(move)){
+				int captureSqi = Chess.coorToSqi(Chess.sqiToCol(toSqi), Chess.sqiToRow(fromSqi));
+				return key ^ ZOBRIST[opponent][captureSqi];
+			}
+		}
+
+		if(Move.isCapturing(move) && Math.abs(position.getStone(toSqi)) == Chess.PAWN){
+			key ^= ZOBRIST[opponent][toSqi];
+		}
+
+		return key;
+	}
+
+	// find the entry for the pawn structure, evaluating and storing it on a miss
+	// returns the index of the entry, which stays valid until the next probe
+	public int probe(long key, long whitePawns, long blackPawns){
+		int index = (int) key & mask;
+		probes++;
+
+		if(keys[index] == key){
+			hits++;
+			return index;
+		}
+
+		long whitePassed = 0, blackPassed = 0;
+		int score = 0;
+
+		for(int c = 0; c < 8; c++){
+			int whiteCount = Long.bitCount(whitePawns & FILES[c]);
+			int blackCount = Long.bitCount(blackPawns & FILES[c]);
+
+			// every pawn after the first on a file is doubled
+			if(whiteCount > 1) score += DOUBLED * (whiteCount - 1);
+			if(blackCount > 1) score -= DOUBLED * (blackCount - 1);
+
+			// pawns without friendly pawns on either side are isolated
+			if((whitePawns & ADJACENT_FILES[c]) == 0) score += ISOLATED * whiteCount;
+			if((blackPawns & ADJACENT_FILES[c]) == 0) score -= ISOLATED * blackCount;
+		}
+
+		// a pawn is passed if no enemy pawn can stop or capture it
+		for(long pawns = whitePawns; pawns != 0; pawns &= pawns - 1){
+			int sqi = Long.numberOfTrailingZeros(pawns);
+			if((blackPawns & PASSED_MASKS[Chess.WHITE][sqi]) == 0){
+				whitePassed |= 1L << sqi;
+				score += PASSED[Chess.sqiToRow(sqi)];
+			}
+		}
+		for(long pawns = blackPawns; pawns != 0; pawns &= pawns - 1){
+			int sqi = Long.numberOfTrailingZeros(pawns);
+			if((whitePawns & PASSED_MASKS[Chess.BLACK][sqi]) == 0){
+				blackPassed |= 1L << sqi;
+				score -= PASSED[7 - Chess.sqiToRow(sqi)];
+			}
+		}
+
+		keys[index] = key;
+		scores[index] = score;
+		passed[2 * index + Chess.WHITE] = whitePassed;
+		passed[2 * index + Chess.BLACK] = blackPassed;
+		return index;
+	}
+
+	// pawn structure score of an entry from white's point of view
+	public int getScore(int index){ return scores[index]; }
+	public long getPassedPawns(int index, int color){ return passed[2 * index + color]; }
+
+	// bonus for the pawns of color sheltering its king, from white's point of view
+	public static int getShieldScore(int kingSqi, int color, long pawns){
+		int shield = SHIELD * Long.bitCount(pawns & SHIELD_MASKS[color][kingSqi]);
+		return color == Chess.WHITE ? shield : -shield;
+	}
+
+	// the number of pawns behind each of the terms probe scores, white's count
+	// minus black's, for tuning the weights: doubled, isolated, and passed pawns
+	// by how far they have advanced from the second rank up to the seventh
+	static final int TERMS = 2 + 6;
+
+	static void countTerms(long whitePawns, long blackPawns, int[] terms, int offset){
+		for(int i = 0; i < TERMS; i++){
+			terms[offset + i] = 0;
+		}
+		for(int c = 0; c < 8; c++){
+			int whiteCount = Long.bitCount(whitePawns & FILES[c]);
+			int blackCount = Long.bitCount(blackPawns & FILES[c]);
+			if(whiteCount > 1) terms[offset] += whiteCount - 1;
+			if(blackCount > 1) terms[offset] -= blackCount - 1;
+			if((whitePawns & ADJACENT_FILES[c]) == 0) terms[offset + 1] += whiteCount;
+			if((blackPawns & ADJACENT_FILES[c]) == 0) terms[offset + 1] -= blackCount;
+		}
+		for(long pawns = whitePawns; pawns != 0; pawns &= pawns - 1){
+			int sqi = Long.numberOfTrailingZeros(pawns);
+			if((blackPawns & PASSED_MASKS[Chess.WHITE][sqi]) == 0){
+				terms[offset + 1 + Chess.sqiToRow(sqi)]++;
+			}
+		}
+		for(long pawns = blackPawns; pawns != 0; pawns &= pawns - 1){
+			int sqi = Long.numberOfTrailingZeros(pawns);
+			if((whitePawns & PASSED_MASKS[Chess.BLACK][sqi]) == 0){
+				terms[offset + 1 + 7 - Chess.sqiToRow(sqi)]--;
+			}
+		}
+	}
+
+	// the current weights of the terms counted by countTerms
+	static int[] getTermWeights(){
+		return new int[]{DOUBLED, ISOLATED, PASSED[1], PASSED[2], PASSED[3], PASSED[4], PASSED[5], PASSED[6]};
+	}
+
+	// the number of pawns sheltering the king of color
+	static int countShield(int kingSqi, int color, long pawns){
+		return Long.bitCount(pawns & SHIELD_MASKS[color][kingSqi]);
+	}
+
+	static int getShieldWeight(){ return SHIELD; }
+
+	public long getProbes(){ return probes; }
+	public long getHits(){ return hits; }
+
+	public double getHitRate(){
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	public void resetStats(){
+		probes = 0;
+		hits = 0;
+	}
+
+}
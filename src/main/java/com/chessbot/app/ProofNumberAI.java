@@ -0,0 +1,249 @@
+package com.chessbot.app;
+
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+// proof-number search for forced mates: the side to move is the attacker and
+// the tree is grown best first towards the node most likely to prove or
+// disprove a mate within mateIn moves, so deep forced mates are found far
+// faster than with a full width search
+public class ProofNumberAI implements ChessAI {
+
+	// proof and disproof numbers saturate here, which also marks a solved node
+	private static final int INFINITY = 100000000;
+
+	// move, first child, child count, proof and disproof
+	private static final int BYTES_PER_NODE = 2 + 4 + 2 + 4 + 4;
+
+	private int mateIn, capacity, size;
+	private ChessAI fallback;
+
+	// the tree is kept in parallel arrays so the memory budget is fixed up front
+	private short[] move, childCount;
+	private int[] firstChild, proof, disproof;
+	private short[] matingLine;
+	private volatile SearchStop searchStop = new SearchStop();
+
+	public ProofNumberAI(int mateIn, int memoryMB){
+		this(mateIn, memoryMB, null);
+	}
+
+	// fallback is asked for a move whenever no mate could be proven
+	public ProofNumberAI(int mateIn, int memoryMB, ChessAI fallback){
+		this.mateIn = mateIn;
+		this.capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) memoryMB * 1024 * 1024 / BYTES_PER_NODE);
+		this.fallback = fallback;
+		this.matingLine = new short[0];
+	}
+
+	public short getMove(Position position){
+		return getMove(position, new SearchStop());
+	}
+
+	public short getMove(Position position, SearchStop stop){
+		if(move == null){
+			move = new short[capacity];
+			childCount = new short[capacity];
+			firstChild = new int[capacity];
+			proof = new int[capacity];
+			disproof = new int[capacity];
+		}
+
+		searchStop = stop;
+		matingLine = new short[0];
+		short[] rootMoves = position.getAllMoves();
+		if(rootMoves.length == 0){
+			return 0;
+		}
+
+		search(position);
+		System.out.println("Proof-Number Nodes: " + size + "\nProved: " + (proof[0] == 0)
+				+ "\nDisproved: " + (disproof[0] == 0) + "\n");
+
+		if(proof[0] == 0){
+			matingLine = buildMatingLine();
+			return matingLine[0];
+		}
+		// the fallback shares the stop, so a search stopped during the proof only
+		// runs the fallback's first iteration
+		if(fallback != null){
+			return fallback.getMove(position, stop);
+		}
+
+		// out of memory without an answer, go with the most promising move
+		int best = firstChild[0];
+		for(int i = firstChild[0]; i < firstChild[0] + childCount[0]; i++){
+			if(proof[i] < proof[best]){
+				best = i;
+			}
+		}
+		return childCount[0] > 0 ? move[best] : rootMoves[0];
+	}
+
+	// also stops the fallback, which searches with the same SearchStop
+	public void stop(){
+		searchStop.stop();
+	}
+
+	// only the fallback searches in iterations
+	public void setSearchListener(SearchListener listener){
+		if(fallback != null){
+			fallback.setSearchListener(listener);
+		}
+	}
+
+	// the line found by the last search that proved a mate, empty otherwise
+	public short[] getMatingLine(){
+		return matingLine;
+	}
+
+	private void search(Position position){
+		int[] path = new int[2 * mateIn + 1];
+
+		size = 1;
+		childCount[0] = 0;
+		proof[0] = 1;
+		disproof[0] = 1;
+
+		try{
+			while(proof[0] != 0 && disproof[0] != 0 && !searchStop.isStopped()){
+
+				// walk down to the most proving node, at the attacker's nodes this is the
+				// child that is cheapest to prove and at the defender's the cheapest to disprove
+				int node = 0, ply = 0;
+				path[0] = 0;
+				while(childCount[node] > 0){
+					node = selectChild(node, ply % 2 == 0);
+					position.doMove(move[node]);
+					path[++ply] = node;
+				}
+
+				boolean expanded = expand(node, position, ply);
+
+				// back the new numbers up along the path, restoring the position as we go
+				for(int i = ply; i >= 0; i--){
+					if(expanded){
+						update(path[i], i % 2 == 0);
+					}
+					if(i > 0){
+						position.undoMove();
+					}
+				}
+
+				// the memory budget is used up
+				if(!expanded){
+					break;
+				}
+			}
+		}
+		catch(IllegalMoveException e){
+			System.out.print("You get washed. https://www.youtube.com/watch?v=4UDnTJcjPhY");
+		}
+	}
+
+	private int selectChild(int node, boolean attacker){
+		int best = firstChild[node];
+		for(int i = best + 1; i < firstChild[node] + childCount[node]; i++){
+			if(attacker ? proof[i] < proof[best] : disproof[i] < disproof[best]){
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	// add every child of node to the tree, returns false if they don't fit
+	private boolean expand(int node, Position position, int ply) throws IllegalMoveException{
+		short[] moves = position.getAllMoves();
+		if(size + moves.length > capacity){
+			return false;
+		}
+
+		firstChild[node] = size;
+		childCount[node] = (short) moves.length;
+
+		// the children are one ply deeper, a child with the defender to move
+		// follows one of the attacker's moves
+		int childPly = ply + 1;
+		boolean defenderToMove = childPly % 2 == 1;
+
+		for(short m : moves){
+			int child = size++;
+			move[child] = m;
+			childCount[child] = 0;
+
+			position.doMove(m);
+			short[] replies = position.getAllMoves();
+
+			if(replies.length == 0){
+				// checkmate on the defender proves the node, anything else is no win
+				boolean mated = position.isCheck() && defenderToMove;
+				proof[child] = mated ? 0 : INFINITY;
+				disproof[child] = mated ? INFINITY : 0;
+			}
+			else if((defenderToMove && childPly == 2 * mateIn - 1) || position.getHalfMoveClock() >= 100){
+				// the attacker has used up all its moves without mating
+				proof[child] = INFINITY;
+				disproof[child] = 0;
+			}
+			else if(defenderToMove){
+				// the more replies the defender has, the harder the proof
+				proof[child] = replies.length;
+				disproof[child] = 1;
+			}
+			else{
+				proof[child] = 1;
+				disproof[child] = replies.length;
+			}
+
+			position.undoMove();
+		}
+		return true;
+	}
+
+	// the attacker needs one child proven, the defender needs all of them
+	private void update(int node, boolean attacker){
+		int first = firstChild[node];
+		int last = first + childCount[node];
+		int min, sum = 0;
+
+		if(attacker){
+			min = INFINITY;
+			for(int i = first; i < last; i++){
+				min = Math.min(min, proof[i]);
+				sum = Math.min(INFINITY, sum + disproof[i]);
+			}
+			proof[node] = min;
+			disproof[node] = sum;
+		}
+		else{
+			min = INFINITY;
+			for(int i = first; i < last; i++){
+				min = Math.min(min, disproof[i]);
+				sum = Math.min(INFINITY, sum + proof[i]);
+			}
+			proof[node] = sum;
+			disproof[node] = min;
+		}
+	}
+
+	// follow a proven move at each of the attacker's turns, every reply of the
+	// defender is proven so any of them continues the line
+	private short[] buildMatingLine(){
+		short[] line = new short[2 * mateIn];
+		int length = 0, node = 0;
+
+		while(childCount[node] > 0){
+			int next = firstChild[node];
+			while(proof[next] != 0){
+				next++;
+			}
+			line[length++] = move[next];
+			node = next;
+		}
+
+		short[] result = new short[length];
+		System.arraycopy(line, 0, result, 0, length);
+		return result;
+	}
+
+}
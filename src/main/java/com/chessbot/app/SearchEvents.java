@@ -0,0 +1,176 @@
+package com.chessbot.app;
+
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// flight recorder events for the searches of KillerAI, so a recording taken in
+// production shows each search, its iterations and their MTD(f) passes next to
+// the garbage collections and threads around them. there are only a handful of
+// events per search, and until a recording is started, at launch or later with
+// jcmd, the event classes aren't even loaded since that alone takes a quarter of
+// a second. record with java -XX:StartFlightRecording=filename=search.jfr ... and
+// read with jfr print --categories ChessBot search.jfr
+public class SearchEvents {
+
+	// each returns a started event, or null while the flight recorder isn't running
+	static Search startSearch(){
+		if(!FlightRecorder.isInitialized()){
+			return null;
+		}
+		Search event = new Search();
+		event.begin();
+		return event;
+	}
+
+	static Iteration startIteration(){
+		if(!FlightRecorder.isInitialized()){
+			return null;
+		}
+		Iteration event = new Iteration();
+		event.begin();
+		return event;
+	}
+
+	static Pass startPass(){
+		if(!FlightRecorder.isInitialized()){
+			return null;
+		}
+		Pass event = new Pass();
+		event.begin();
+		return event;
+	}
+
+	@Name("com.chessbot.Search")
+	@Label("Search")
+	@Category("ChessBot")
+	@Description("One call to getMove, from the position to the move played")
+	static class Search extends Event {
+
+		@Label("Position")
+		String fen;
+
+		@Label("Move")
+		String move;
+
+		@Label("Depth")
+		@Description("The depth of the last complete iteration")
+		int depth;
+
+		@Label("Score")
+		int score;
+
+		@Label("Nodes")
+		long nodes;
+
+		@Label("Nodes per Second")
+		long nodesPerSecond;
+
+		@Label("Transposition Hit Rate")
+		float transpositionHitRate;
+
+		@Label("Pawn Hash Hit Rate")
+		float pawnHitRate;
+
+		@Label("From Store")
+		@Description("The move came from the evaluation store without searching")
+		boolean fromStore;
+
+		// the position is only turned into a fen when a recording wants the event
+		void finish(Position position, short move, int depth, int score, long nodes, long nodesPerSecond,
+				double transpositionHitRate, double pawnHitRate, boolean fromStore){
+			end();
+			if(shouldCommit()){
+				this.fen = position.getFEN();
+				this.move = Move.getString(move);
+				this.depth = depth;
+				this.score = score;
+				this.nodes = nodes;
+				this.nodesPerSecond = nodesPerSecond;
+				this.transpositionHitRate = (float) transpositionHitRate;
+				this.pawnHitRate = (float) pawnHitRate;
+				this.fromStore = fromStore;
+				commit();
+			}
+		}
+
+	}
+
+	@Name("com.chessbot.Iteration")
+	@Label("Iteration")
+	@Category("ChessBot")
+	@Description("One depth of the iterative deepening")
+	static class Iteration extends Event {
+
+		@Label("Depth")
+		int depth;
+
+		@Label("Score")
+		int score;
+
+		@Label("Nodes")
+		long nodes;
+
+		@Label("Passes")
+		@Description("The MTD(f) passes it took to converge")
+		int passes;
+
+		@Label("Complete")
+		@Description("False if the search was stopped before the iteration finished")
+		boolean complete;
+
+		void finish(int depth, int score, long nodes, int passes, boolean complete){
+			end();
+			if(shouldCommit()){
+				this.depth = depth;
+				this.score = score;
+				this.nodes = nodes;
+				this.passes = passes;
+				this.complete = complete;
+				commit();
+			}
+		}
+
+	}
+
+	@Name("com.chessbot.Pass")
+	@Label("MTD(f) Pass")
+	@Category("ChessBot")
+	@Description("One zero window search of an iteration")
+	static class Pass extends Event {
+
+		@Label("Depth")
+		int depth;
+
+		@Label("Beta")
+		int beta;
+
+		@Label("Value")
+		int value;
+
+		@Label("Fail High")
+		boolean failHigh;
+
+		@Label("Nodes")
+		long nodes;
+
+		void finish(int depth, int beta, int value, long nodes){
+			end();
+			if(shouldCommit()){
+				this.depth = depth;
+				this.beta = beta;
+				this.value = value;
+				this.failHigh = value >= beta;
+				this.nodes = nodes;
+				commit();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.chessbot.app;
+
+import java.util.Arrays;
+
+import chesspresso.position.Position;
+
+// stack of hash codes for the positions along the line currently being searched,
+// used to score repetitions and the fifty move rule as draws
+public class SearchHistory {
+
+	private static final int FIFTY_MOVE_PLIES = 100;
+
+	private long[] keys;
+	private int size;
+
+	public SearchHistory(int capacity){
+		keys = new long[Math.max(capacity, 2)];
+		size = 0;
+	}
+
+	public void clear(){
+		size = 0;
+	}
+
+	public void push(long key){
+		if(size == keys.length){
+			keys = Arrays.copyOf(keys, 2 * size);
+		}
+		keys[size++] = key;
+	}
+
+	public void pop(){
+		size--;
+	}
+
+	// takes position back to just after its last capture or pawn move, as far as
+	// its moves are known, and returns how many moves were undone. the clock is
+	// read once, it goes down with every move undone
+	static int undoReversible(Position position){
+		int halfMoveClock = position.getHalfMoveClock();
+		int undone = 0;
+		while(undone < halfMoveClock && position.canUndoMove()){
+			position.undoMove();
+			undone++;
+		}
+		return undone;
+	}
+
+	// the position on top of the stack is a draw if it already occurred since the
+	// last capture or pawn move, or if there have been fifty moves without one
+	public boolean isDraw(Position position){
+		int halfMoveClock = position.getHalfMoveClock();
+		if(halfMoveClock >= FIFTY_MOVE_PLIES){
+			return true;
+		}
+
+		// only positions with the same side to move can repeat, and nothing before
+		// the last irreversible move can be repeated, so the scan is short
+		long key = keys[size-1];
+		int oldest = Math.max(0, size - 1 - halfMoveClock);
+		for(int i = size - 3; i >= oldest; i -= 2){
+			if(keys[i] == key){
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
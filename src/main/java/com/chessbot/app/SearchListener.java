@@ -0,0 +1,7 @@
+package com.chessbot.app;
+
+// told about the progress of a search, called on the engine's thread so it
+// should hand anything slow off to another one
+public interface SearchListener {
+	public void iterationComplete(SearchProgress progress);
+}
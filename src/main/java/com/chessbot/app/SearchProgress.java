@@ -0,0 +1,40 @@
+package com.chessbot.app;
+
+// a snapshot of a search after a completed iteration, the nodes and time are
+// counted from the start of the search
+public class SearchProgress {
+
+	private static final short[] NO_MOVES = new short[0];
+
+	private int depth, score;
+	private short bestMove;
+	private short[] principalVariation;
+	private long nodes, elapsedMillis;
+
+	public SearchProgress(int depth, int score, short bestMove, long nodes, long elapsedMillis){
+		this(depth, score, bestMove, NO_MOVES, nodes, elapsedMillis);
+	}
+
+	// the principal variation starts with the best move, engines that don't
+	// keep one give an empty array
+	public SearchProgress(int depth, int score, short bestMove, short[] principalVariation, long nodes, long elapsedMillis){
+		this.depth = depth;
+		this.score = score;
+		this.bestMove = bestMove;
+		this.principalVariation = principalVariation;
+		this.nodes = nodes;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public int getDepth(){ return depth; }
+	public int getScore(){ return score; }
+	public short getBestMove(){ return bestMove; }
+	public long getNodes(){ return nodes; }
+	public long getElapsedMillis(){ return elapsedMillis; }
+	public short[] getPrincipalVariation(){ return principalVariation; }
+
+	public long getNodesPerSecond(){
+		return elapsedMillis == 0 ? 0 : nodes * 1000 / elapsedMillis;
+	}
+
+}
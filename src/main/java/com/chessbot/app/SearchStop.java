@@ -0,0 +1,18 @@
+package com.chessbot.app;
+
+// the stop of one search. it is made before the search is handed to the engine
+// and engines only ever set it, so a stop that arrives before the engine has
+// started the search still ends it, and a late stop can't end the next search
+public class SearchStop {
+
+	private volatile boolean stopped;
+
+	public void stop(){
+		stopped = true;
+	}
+
+	public boolean isStopped(){
+		return stopped;
+	}
+
+}
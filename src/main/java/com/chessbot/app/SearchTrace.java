@@ -0,0 +1,383 @@
+package com.chessbot.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// opt in tracing of a KillerAI search, to see where the nodes of a slow search
+// went: the nodes under each root move and at each ply of every iteration, and
+// optionally a sample of the searched tree written to a compact binary file.
+// the search only calls in here when a trace is set, so without one the cost is
+// a null check per move. nodes close to the root are always written, deeper ones
+// one in sampleRate, each with its path, window, value and the size of its subtree
+// usage: SearchTrace <trace file> [subtrees to list]
+public class SearchTrace implements Closeable {
+
+	// "CBT2", the ply counts became shorts in the second format
+	private static final int MAGIC = 0x43425432;
+	private static final byte SEARCH = 'S';
+	private static final byte ITERATION = 'I';
+	private static final byte NODE = 'N';
+	private static final byte DONE = 'D';
+
+	// nodes down to this ply are always written, there are only a few thousand
+	private static final int FULL_PLY = 2;
+
+	private DataOutputStream out;
+	private int sampleMask;
+	private long random = 0x9E3779B97F4A7C15L;
+
+	// per ply, indexed by the ply of the node entered, 0 counts the root passes
+	private long[] plyNodes, entryNodes;
+	private boolean[] sampled;
+	private short[] path;
+
+	// the nodes under each root move, added up over the passes of an iteration
+	private short[] rootMoves;
+	private long[] rootNodes;
+	private int rootCount;
+
+	private int depth, passes;
+	private long searchNodes, iterationNodes, previousNodes;
+	private boolean complete;
+
+	// counting only, nothing is written
+	public SearchTrace(){
+		plyNodes = new long[0];
+	}
+
+	// sampleRate is rounded down to a power of two, 0 writes only the nodes near the root
+	public SearchTrace(String file, int sampleRate) throws IOException {
+		this();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		sampleMask = sampleRate > 0 ? Integer.highestOneBit(sampleRate) - 1 : -1;
+	}
+
+	void startSearch(Position position, int maxPly){
+		if(plyNodes.length < maxPly + 2){
+			plyNodes = new long[maxPly + 2];
+			entryNodes = new long[maxPly + 2];
+			sampled = new boolean[maxPly + 2];
+			path = new short[maxPly + 2];
+		}
+		if(rootMoves == null || rootMoves.length < position.getAllMoves().length){
+			rootMoves = new short[Math.max(position.getAllMoves().length, 64)];
+			rootNodes = new long[rootMoves.length];
+		}
+		searchNodes = 0;
+		iterationNodes = 0;
+		try{
+			if(out != null){
+				out.writeByte(SEARCH);
+				out.writeUTF(position.getFEN());
+			}
+		}
+		catch(IOException e){
+			failed(e);
+		}
+	}
+
+	void startIteration(int depth){
+		this.depth = depth;
+		passes = 0;
+		rootCount = 0;
+		Arrays.fill(plyNodes, 0);
+		try{
+			if(out != null){
+				out.writeByte(ITERATION);
+				out.writeByte(depth);
+			}
+		}
+		catch(IOException e){
+			failed(e);
+		}
+	}
+
+	void startPass(){
+		passes++;
+		plyNodes[0]++;
+	}
+
+	// before the search of the node reached by move
+	void enter(int ply, short move, long nodes){
+		plyNodes[ply]++;
+		path[ply] = move;
+		entryNodes[ply] = nodes;
+		if(ply <= FULL_PLY){
+			sampled[ply] = true;
+		}
+		else if(sampleMask < 0 || out == null){
+			sampled[ply] = false;
+		}
+		else{
+			random ^= random << 13;
+			random ^= random >>> 7;
+			random ^= random << 17;
+			sampled[ply] = (random & sampleMask) == 0;
+		}
+	}
+
+	// after it, the window and value are from the side the engine plays for
+	void exit(int ply, int depth, int alpha, int beta, int value, long nodes){
+		long subtree = nodes - entryNodes[ply];
+		if(ply == 1){
+			addRootNodes(path[1], subtree);
+		}
+		if(sampled[ply] && out != null){
+			try{
+				out.writeByte(NODE);
+				out.writeShort(ply);
+				out.writeByte(depth);
+				for(int i = 1; i <= ply; i++){
+					out.writeShort(path[i]);
+				}
+				out.writeInt(alpha);
+				out.writeInt(beta);
+				out.writeInt(value);
+				out.writeLong(subtree);
+			}
+			catch(IOException e){
+				failed(e);
+			}
+		}
+	}
+
+	private void addRootNodes(short move, long nodes){
+		for(int i = 0; i < rootCount; i++){
+			if(rootMoves[i] == move){
+				rootNodes[i] += nodes;
+				return;
+			}
+		}
+		rootMoves[rootCount] = move;
+		rootNodes[rootCount++] = nodes;
+	}
+
+	// complete is false for an iteration cut short by a stop, the nodes are
+	// counted from the start of the search
+	void endIteration(boolean complete, int score, short bestMove, long nodes, long elapsedMillis){
+		this.complete = complete;
+		previousNodes = iterationNodes;
+		iterationNodes = nodes - searchNodes;
+		searchNodes = nodes;
+		try{
+			if(out != null){
+				out.writeByte(DONE);
+				out.writeBoolean(complete);
+				out.writeInt(score);
+				out.writeShort(bestMove);
+				out.writeLong(iterationNodes);
+				out.writeLong(elapsedMillis);
+				out.writeShort(plyNodes.length);
+				for(long count : plyNodes){
+					out.writeLong(count);
+				}
+				out.writeShort(rootCount);
+				for(int i = 0; i < rootCount; i++){
+					out.writeShort(rootMoves[i]);
+					out.writeLong(rootNodes[i]);
+				}
+				// flushed with every iteration, so a search that blows up and
+				// never returns is written up to the iteration before
+				out.flush();
+			}
+		}
+		catch(IOException e){
+			failed(e);
+		}
+	}
+
+	// a trace that can't be written shouldn't stop the search, the counting goes on
+	private void failed(IOException e){
+		System.err.println("Search trace stopped writing: " + e.getMessage());
+		out = null;
+	}
+
+	// the last iteration in a few lines for the log
+	public String getReport(){
+		StringBuilder report = new StringBuilder("Trace depth " + depth + (complete ? "" : " (stopped)") + ": "
+				+ iterationNodes + " nodes in " + passes + " passes");
+		if(previousNodes > 0){
+			report.append(String.format(", %.1fx the previous depth", (double) iterationNodes / previousNodes));
+		}
+		report.append("\n").append(formatPlies(plyNodes));
+		report.append("\n").append(formatRootMoves(rootMoves, rootNodes, rootCount, 5));
+		return report.toString();
+	}
+
+	// the nodes at each ply and how many children each of them had on average
+	private static String formatPlies(long[] plyNodes){
+		StringBuilder text = new StringBuilder("Nodes per ply:");
+		for(int ply = 1; ply < plyNodes.length && plyNodes[ply] > 0; ply++){
+			text.append(" ").append(ply).append(":").append(plyNodes[ply]);
+			if(plyNodes[ply - 1] > 0){
+				text.append(String.format(" (%.1f)", (double) plyNodes[ply] / plyNodes[ply - 1]));
+			}
+		}
+		return text.toString();
+	}
+
+	// the root moves with the most nodes under them, heaviest first
+	private static String formatRootMoves(short[] moves, long[] nodes, int count, int top){
+		Integer[] order = new Integer[count];
+		long total = 0;
+		for(int i = 0; i < count; i++){
+			order[i] = i;
+			total += nodes[i];
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(nodes[b], nodes[a]));
+
+		StringBuilder text = new StringBuilder("Heaviest root moves:");
+		for(int i = 0; i < Math.min(top, count); i++){
+			int index = order[i];
+			text.append(" ").append(Move.getString(moves[index])).append(" ").append(nodes[index])
+					.append(" (").append(total == 0 ? 0 : 100 * nodes[index] / total).append("%)");
+		}
+		return text.toString();
+	}
+
+	public void close() throws IOException {
+		if(out != null){
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			System.err.println("usage: SearchTrace <trace file> [subtrees to list]");
+			System.exit(1);
+		}
+		int top = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		summarize(args[0], top);
+	}
+
+	// print every iteration of every search in the file, with the largest of
+	// the sampled subtrees below the root moves
+	public static void summarize(String file, int top) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))){
+			if(in.readInt() != MAGIC){
+				throw new IOException(file + " is not a search trace");
+			}
+			List<Node> nodes = new ArrayList<Node>();
+			long previous = 0;
+			int depth = 0;
+
+			while(true){
+				int tag;
+				try{
+					tag = in.readByte();
+				}
+				catch(EOFException e){
+					break;
+				}
+
+				switch(tag){
+					case SEARCH:
+						System.out.println("\nPosition " + in.readUTF());
+						previous = 0;
+						break;
+					case ITERATION:
+						depth = in.readByte();
+						nodes.clear();
+						break;
+					case NODE:
+						nodes.add(Node.read(in));
+						break;
+					case DONE:
+						boolean complete = in.readBoolean();
+						int score = in.readInt();
+						short bestMove = in.readShort();
+						long iterationNodes = in.readLong();
+						long elapsed = in.readLong();
+						long[] plyNodes = new long[in.readShort()];
+						for(int i = 0; i < plyNodes.length; i++){
+							plyNodes[i] = in.readLong();
+						}
+						short[] rootMoves = new short[in.readShort()];
+						long[] rootNodes = new long[rootMoves.length];
+						for(int i = 0; i < rootMoves.length; i++){
+							rootMoves[i] = in.readShort();
+							rootNodes[i] = in.readLong();
+						}
+
+						System.out.println("Depth " + depth + (complete ? "" : " (stopped)") + ": " + Move.getString(bestMove)
+								+ " score " + score + ", " + iterationNodes + " nodes in " + plyNodes[0] + " passes"
+								+ (previous > 0 ? String.format(", %.1fx the previous depth", (double) iterationNodes / previous) : "")
+								+ ", " + elapsed + " ms since the start");
+						System.out.println("  " + formatPlies(plyNodes));
+						System.out.println("  " + formatRootMoves(rootMoves, rootNodes, rootMoves.length, top));
+						printSubtrees(nodes, top);
+						previous = iterationNodes;
+						break;
+					default:
+						throw new IOException("Broken trace, unknown record " + tag);
+				}
+			}
+		}
+	}
+
+	// the root moves are already listed, so these start a ply below them
+	private static void printSubtrees(List<Node> nodes, int top){
+		List<Node> below = new ArrayList<Node>();
+		for(Node node : nodes){
+			if(node.path.length > 1){
+				below.add(node);
+			}
+		}
+		if(below.isEmpty()){
+			return;
+		}
+		below.sort((a, b) -> Long.compare(b.subtree, a.subtree));
+		System.out.println("  Largest of " + below.size() + " written subtrees:");
+		for(int i = 0; i < Math.min(top, below.size()); i++){
+			System.out.println("    " + below.get(i));
+		}
+	}
+
+	// one written node, the moves from the root to it and what its search found
+	private static class Node {
+
+		private short[] path;
+		private int depth, alpha, beta, value;
+		private long subtree;
+
+		private static Node read(DataInputStream in) throws IOException {
+			Node node = new Node();
+			node.path = new short[in.readShort()];
+			node.depth = in.readByte();
+			for(int i = 0; i < node.path.length; i++){
+				node.path[i] = in.readShort();
+			}
+			node.alpha = in.readInt();
+			node.beta = in.readInt();
+			node.value = in.readInt();
+			node.subtree = in.readLong();
+			return node;
+		}
+
+		public String toString(){
+			StringBuilder text = new StringBuilder();
+			for(short move : path){
+				text.append(Move.getString(move)).append(' ');
+			}
+			String result = value >= beta ? "fail high" : value <= alpha ? "fail low" : "exact";
+			return text + "depth " + depth + " window [" + alpha + ", " + beta + "] value " + value
+					+ " " + result + ", " + subtree + " nodes";
+		}
+
+	}
+
+}
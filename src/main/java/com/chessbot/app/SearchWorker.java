@@ -0,0 +1,303 @@
+package com.chessbot.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import chesspresso.position.Position;
+
+// one process of a DistributedSearch, searching the root moves the coordinator
+// gives it with a KillerAI and a transposition table of its own. it reports each
+// iteration, takes in the best score the other workers have found at a depth as
+// a bound, and sends its deep table entries on to them through the coordinator
+// usage: SearchWorker <port> [hash MB]
+public class SearchWorker {
+
+	// the messages, each a type byte and then its fields in DataOutput format
+	// coordinator to worker: id, fen, the moves played since, depth, root moves
+	static final int SEARCH = 1;
+	// coordinator to worker: id, depth, score
+	static final int BOUND = 2;
+	// coordinator to worker: id
+	static final int STOP = 3;
+	// worker to coordinator: id, depth, score, move, nodes
+	static final int ITERATION = 4;
+	// worker to coordinator: id, move, nodes
+	static final int DONE = 5;
+	// both ways, the coordinator passes them on to the other workers:
+	// id, key, depth, value, bound, move
+	static final int ENTRY = 6;
+	// worker to coordinator, instead of DONE when the search threw: id, message
+	static final int FAILED = 7;
+
+	// entries with less depth left than this are cheap to search again
+	private static final int SHARE_DEPTH = 4;
+
+	// received entries waiting for the search to take them in, more are dropped
+	private static final int PENDING_ENTRIES = 1 << 14;
+
+	private final int hashMB;
+
+	// kept between searches of the same depth, so is its table's memory
+	private volatile KillerAI ai;
+	private int depth;
+
+	public SearchWorker(int hashMB){
+		this.hashMB = hashMB;
+	}
+
+	// serves one coordinator at a time, until it disconnects
+	public void serve(int port) throws IOException {
+		try(ServerSocket server = new ServerSocket(port)){
+			System.out.println("Search worker on port " + server.getLocalPort());
+			while(true){
+				try(Socket socket = server.accept()){
+					socket.setTcpNoDelay(true);
+					new Connection(socket).run();
+				}
+				catch(IOException e){
+					System.err.println("Lost the coordinator: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private class Connection implements SearchListener, EntrySharing {
+
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private final ExecutorService searches;
+
+		// the search running, set as it arrives so everything sent for it is taken
+		private volatile int current;
+		private volatile SearchStop searchStop = new SearchStop();
+		private long nodes;
+
+		private final long[] pendingKeys;
+		private final int[] pendingValues;
+		private final short[] pendingMoves;
+		private final byte[] pendingDepths, pendingBounds;
+		private int pending;
+
+		private Connection(Socket socket) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.searches = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "ChessBot Worker Search");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.pendingKeys = new long[PENDING_ENTRIES];
+			this.pendingValues = new int[PENDING_ENTRIES];
+			this.pendingMoves = new short[PENDING_ENTRIES];
+			this.pendingDepths = new byte[PENDING_ENTRIES];
+			this.pendingBounds = new byte[PENDING_ENTRIES];
+		}
+
+		// reads the coordinator's messages until it disconnects, the searches
+		// run on their own thread so a stop or a bound is seen right away
+		private void run() throws IOException {
+			try{
+				while(true){
+					int type = in.read();
+					if(type < 0){
+						return;
+					}
+					int id = in.readInt();
+					switch(type){
+					case SEARCH:
+						readSearch(id);
+						break;
+					case BOUND:
+						int boundDepth = in.readInt();
+						int score = in.readInt();
+						KillerAI engine = ai;
+						if(id == current && engine != null){
+							engine.setRootBound(boundDepth, score);
+						}
+						break;
+					case STOP:
+						if(id == current){
+							searchStop.stop();
+						}
+						break;
+					case ENTRY:
+						long key = in.readLong();
+						byte entryDepth = in.readByte();
+						int value = in.readInt();
+						byte bound = in.readByte();
+						short move = in.readShort();
+						if(id == current){
+							addPending(key, entryDepth, value, bound, move);
+						}
+						break;
+					default:
+						throw new IOException("Unknown message " + type);
+					}
+				}
+			}
+			finally{
+				current = 0;
+				searchStop.stop();
+				searches.shutdown();
+				try{
+					searches.awaitTermination(1, TimeUnit.MINUTES);
+				}
+				catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private void readSearch(int id) throws IOException {
+			String fen = in.readUTF();
+			short[] played = new short[in.readShort()];
+			for(int i = 0; i < played.length; i++){
+				played[i] = in.readShort();
+			}
+			int searchDepth = in.readInt();
+			short[] rootMoves = new short[in.readShort()];
+			for(int i = 0; i < rootMoves.length; i++){
+				rootMoves[i] = in.readShort();
+			}
+
+			synchronized(this){
+				pending = 0;
+			}
+			SearchStop stop = new SearchStop();
+			searchStop = stop;
+			current = id;
+			searches.execute(() -> search(id, fen, played, searchDepth, rootMoves, stop));
+		}
+
+		private void search(int id, String fen, short[] played, int searchDepth, short[] rootMoves, SearchStop stop){
+			short move = 0;
+			String failure = null;
+			nodes = 0;
+			try{
+				// the moves since the last capture or pawn move, so repetitions are seen
+				Position position = new Position(fen);
+				for(short playedMove : played){
+					position.doMove(playedMove);
+				}
+				if(ai == null || depth != searchDepth){
+					// direct memory is only freed once its buffer is collected, dropping the
+					// old engine first lets the collection a short allocation runs free it
+					ai = null;
+					ai = new KillerAI(searchDepth, hashMB, null);
+					depth = searchDepth;
+				}
+				KillerAI engine = ai;
+				engine.setRootMoves(rootMoves);
+				engine.setSearchListener(this);
+				engine.setEntrySharing(this);
+				move = engine.getMove(position, stop);
+			}
+			// an engine that can't get its table's memory fails too, rather than leave the
+			// coordinator waiting
+			catch(Throwable e){
+				e.printStackTrace();
+				failure = e.toString();
+			}
+
+			try{
+				if(failure != null){
+					out.writeByte(FAILED);
+					out.writeInt(id);
+					out.writeUTF(failure);
+				}
+				else{
+					out.writeByte(DONE);
+					out.writeInt(id);
+					out.writeShort(move);
+					out.writeLong(nodes);
+				}
+				out.flush();
+			}
+			catch(IOException e){
+				// the reading thread finds the connection closed too
+			}
+		}
+
+		// only the search thread writes to the coordinator
+		public void iterationComplete(SearchProgress progress){
+			nodes = progress.getNodes();
+			try{
+				out.writeByte(ITERATION);
+				out.writeInt(current);
+				out.writeInt(progress.getDepth());
+				out.writeInt(progress.getScore());
+				out.writeShort(progress.getBestMove());
+				out.writeLong(progress.getNodes());
+				out.flush();
+			}
+			catch(IOException e){
+				searchStop.stop();
+			}
+		}
+
+		// written as they are found and flushed when entries are taken in
+		public void stored(long key, int depth, int value, int bound, short move){
+			if(depth < SHARE_DEPTH){
+				return;
+			}
+			try{
+				out.writeByte(ENTRY);
+				out.writeInt(current);
+				out.writeLong(key);
+				out.writeByte(depth);
+				out.writeInt(value);
+				out.writeByte(bound);
+				out.writeShort(move);
+			}
+			catch(IOException e){
+				searchStop.stop();
+			}
+		}
+
+		public void receive(TranspositionTable table){
+			try{
+				out.flush();
+			}
+			catch(IOException e){
+				searchStop.stop();
+			}
+			synchronized(this){
+				for(int i = 0; i < pending; i++){
+					table.offer(pendingKeys[i], pendingDepths[i], pendingValues[i], pendingBounds[i], pendingMoves[i]);
+				}
+				pending = 0;
+			}
+		}
+
+		private synchronized void addPending(long key, byte depth, int value, byte bound, short move){
+			if(pending == PENDING_ENTRIES){
+				return;
+			}
+			pendingKeys[pending] = key;
+			pendingDepths[pending] = depth;
+			pendingValues[pending] = value;
+			pendingBounds[pending] = bound;
+			pendingMoves[pending] = move;
+			pending++;
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0){
+			System.err.println("usage: SearchWorker <port> [hash MB]");
+			System.exit(1);
+		}
+		int hashMB = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		new SearchWorker(hashMB).serve(Integer.parseInt(args[0]));
+	}
+
+}
@@ -0,0 +1,219 @@
+package com.chessbot.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// plays KillerAI against itself on every core to make training positions: each
+// game starts from the first moves of a random book game, every move is searched
+// to a fixed number of nodes, and the quiet positions are written with the search
+// score and, once the game is over, its result. each thread writes its own shard
+// in the TrainingFile format, so the shards can simply be joined together
+// usage: SelfPlay <out dir> [games] [nodes per move] [threads] [book.pgn]
+public class SelfPlay {
+
+	// the opening is the first OPENING_PLIES to OPENING_PLIES + OPENING_SPREAD
+	// plies of a book game, then a random move so games from the same book game differ
+	private static final int OPENING_PLIES = 4;
+	private static final int OPENING_SPREAD = 12;
+	private static final int MAX_PLIES = 400;
+
+	private List<short[]> openings;
+	private String directory;
+	private long nodes;
+	private AtomicLong gamesLeft, gamesPlayed, positions;
+	private BoardFeed[] feeds;
+	private volatile boolean stopped;
+
+	public SelfPlay(List<short[]> openings, String directory, long games, long nodes){
+		this.openings = openings;
+		this.directory = directory;
+		this.nodes = nodes;
+		this.gamesLeft = new AtomicLong(games);
+		this.gamesPlayed = new AtomicLong();
+		this.positions = new AtomicLong();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1){
+			System.err.println("usage: SelfPlay <out dir> [games] [nodes per move] [threads] [book.pgn]");
+			System.exit(1);
+		}
+		long games = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		long nodes = args.length > 2 ? Long.parseLong(args[2]) : 20000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		String book = args.length > 4 ? args[4] : "book.pgn";
+
+		new File(args[0]).mkdirs();
+		new SelfPlay(readOpenings(book), args[0], games, nodes).run(threads);
+	}
+
+	public static List<short[]> readOpenings(String book) throws IOException {
+		List<short[]> openings = new ArrayList<short[]>();
+		try(PGNStream pgn = new PGNStream(book)){
+			pgn.forEach(game -> {
+				if(game.getTag("FEN") == null && game.getMoveCount() >= OPENING_PLIES + OPENING_SPREAD){
+					short[] moves = new short[OPENING_PLIES + OPENING_SPREAD];
+					for(int i = 0; i < moves.length; i++){
+						moves[i] = game.getMove(i);
+					}
+					openings.add(moves);
+				}
+			});
+		}
+		return openings;
+	}
+
+	// each thread publishes its game to the feed of the same number, so it can be watched
+	public void setFeeds(BoardFeed[] feeds){
+		this.feeds = feeds;
+	}
+
+	// the threads drop the games they are playing, which have no result yet, and end
+	public void stop(){
+		stopped = true;
+		gamesLeft.set(0);
+	}
+
+	public void run(int threads) throws InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < threads; i++){
+			int shard = i;
+			workers.execute(() -> play(shard));
+		}
+		workers.shutdown();
+
+		while(!workers.awaitTermination(30, TimeUnit.SECONDS)){
+			report(start);
+		}
+		report(start);
+	}
+
+	private void report(long start){
+		double hours = Math.max(System.currentTimeMillis() - start, 1) / 3600000.0;
+		System.out.println("Games: " + gamesPlayed.get() + " Positions: " + positions.get()
+				+ " Positions/hour: " + (long) (positions.get() / hours));
+	}
+
+	// one thread, playing games until there are none left to play
+	private void play(int shard){
+		KillerAI ai = new KillerAI(64, 16, null);
+		ai.setNodeLimit(nodes);
+		int[] score = new int[1];
+		ai.setSearchListener(progress -> score[0] = progress.getScore());
+
+		Random random = new Random(System.nanoTime() + shard);
+		SearchHistory history = new SearchHistory(MAX_PLIES + OPENING_PLIES + OPENING_SPREAD + 2);
+		byte[] records = new byte[MAX_PLIES * TrainingFile.RECORD_BYTES];
+		String file = new File(directory, "selfplay-" + shard + ".bin").getPath();
+
+		try(TrainingFile.Writer writer = new TrainingFile.Writer(file, true)){
+			int game = 0;
+			while(gamesLeft.getAndDecrement() > 0){
+				Position position = startPosition(random, history);
+				int count = 0, result = TrainingFile.DRAW;
+				game++;
+				publish(shard, position, "Game " + game);
+
+				for(int ply = 0; ply < MAX_PLIES && !stopped; ply++){
+					if(!position.canMove()){
+						if(position.isCheck()){
+							result = position.getToPlay() == Chess.WHITE ? TrainingFile.BLACK_WINS : TrainingFile.WHITE_WINS;
+						}
+						break;
+					}
+					if(history.isDraw(position) || isInsufficientMaterial(position)){
+						break;
+					}
+
+					score[0] = 0;
+					short move = ai.getMove(position);
+					int white = position.getToPlay() == Chess.WHITE ? score[0] : -score[0];
+
+					// positions where a capture or check is under way don't say much
+					// about the static evaluation
+					if(!position.isCheck() && !Move.isCapturing(move) && !Move.isPromotion(move)){
+						TrainingFile.encode(position, TrainingFile.DRAW, white, records, count * TrainingFile.RECORD_BYTES);
+						count++;
+					}
+
+					position.doMove(move);
+					history.push(position.getHashCode());
+					publish(shard, position, "Game " + game + "  ply " + ply + "  " + String.format("%+.2f", white / 100.0));
+				}
+
+				if(stopped){
+					break;
+				}
+
+				// the result is only known now, so the records are written after the game
+				for(int i = 0; i < count; i++){
+					TrainingFile.setResult(records, i * TrainingFile.RECORD_BYTES, result);
+				}
+				writer.write(records, count);
+				positions.addAndGet(count);
+				gamesPlayed.incrementAndGet();
+			}
+		}
+		catch(IOException | IllegalMoveException e){
+			e.printStackTrace();
+		}
+	}
+
+	private void publish(int shard, Position position, String status){
+		if(feeds != null && shard < feeds.length){
+			feeds[shard].publish(position, status);
+		}
+	}
+
+	// a random book opening plus one random move
+	private Position startPosition(Random random, SearchHistory history) throws IllegalMoveException {
+		Position position = Position.createInitialPosition();
+		history.clear();
+		history.push(position.getHashCode());
+
+		if(!openings.isEmpty()){
+			short[] opening = openings.get(random.nextInt(openings.size()));
+			int plies = OPENING_PLIES + random.nextInt(OPENING_SPREAD + 1);
+			for(int i = 0; i < plies; i++){
+				position.doMove(opening[i]);
+				history.push(position.getHashCode());
+			}
+		}
+
+		short[] moves = position.getAllMoves();
+		if(moves.length > 0){
+			position.doMove(moves[random.nextInt(moves.length)]);
+			history.push(position.getHashCode());
+		}
+		return position;
+	}
+
+	// only the kings left, or a king and a single minor piece against a king
+	private static boolean isInsufficientMaterial(Position position){
+		int minors = 0;
+		for(int sqi = 0; sqi < 64; sqi++){
+			int piece = Chess.stoneToPiece(position.getStone(sqi));
+			if(piece == Chess.PAWN || piece == Chess.ROOK || piece == Chess.QUEEN){
+				return false;
+			}
+			if(piece == Chess.KNIGHT || piece == Chess.BISHOP){
+				minors++;
+			}
+		}
+		return minors <= 1;
+	}
+
+}
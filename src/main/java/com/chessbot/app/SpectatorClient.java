@@ -0,0 +1,131 @@
+package com.chessbot.app;
+
+import java.io.File;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.geometry.VPos;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import javafx.stage.Stage;
+
+// watches a self-play run: SelfPlay plays a game on every board's thread while
+// this draws all the boards on one canvas at a fixed frame rate. each frame
+// takes the newest position of every game, and only the squares that changed
+// since the last frame are painted, so dozens of boards cost next to nothing
+// usage: SpectatorClient <out dir> [boards] [nodes per move] [book.pgn]
+public class SpectatorClient extends Application {
+
+	private static final long FRAME_NANOS = 1000000000L / 10;
+
+	// the grid is scaled so it fits in about this many pixels
+	private static final double GRID_PIXELS = 960;
+	private static final double STATUS_PIXELS = 16;
+	private static final double GAP_PIXELS = 8;
+
+	private SelfPlay selfPlay;
+	private BoardFeed[] feeds;
+	private BoardRenderer[] boards;
+	private BoardFeed.Frame[] shown;
+	private GraphicsContext graphics;
+	private long lastFrame;
+
+	public static void main(String[] args) {
+		launch(args);
+	}
+
+	@Override
+	public void start(Stage primaryStage) throws Exception {
+		List<String> args = getParameters().getRaw();
+		if (args.isEmpty()) {
+			System.err.println("usage: SpectatorClient <out dir> [boards] [nodes per move] [book.pgn]");
+			System.exit(1);
+		}
+		int count = args.size() > 1 ? Integer.parseInt(args.get(1)) : Runtime.getRuntime().availableProcessors();
+		long nodes = args.size() > 2 ? Long.parseLong(args.get(2)) : 20000;
+		String book = args.size() > 3 ? args.get(3) : "book.pgn";
+
+		// lay the boards out in a square grid scaled to fit
+		int columns = (int) Math.ceil(Math.sqrt(count));
+		int rows = (count + columns - 1) / columns;
+		double square = Math.max(Math.floor((GRID_PIXELS / columns - GAP_PIXELS) / 8), 6);
+		double cellWidth = 8 * square + GAP_PIXELS;
+		double cellHeight = 8 * square + STATUS_PIXELS + GAP_PIXELS;
+
+		Canvas canvas = new Canvas(columns * cellWidth, rows * cellHeight);
+		graphics = canvas.getGraphicsContext2D();
+		feeds = new BoardFeed[count];
+		boards = new BoardRenderer[count];
+		shown = new BoardFeed.Frame[count];
+		for (int i = 0; i < count; i++) {
+			feeds[i] = new BoardFeed();
+			boards[i] = new BoardRenderer(graphics, (i % columns) * cellWidth, (i / columns) * cellHeight, square, false);
+		}
+
+		// the games run until the window is closed, each on its own thread
+		new File(args.get(0)).mkdirs();
+		selfPlay = new SelfPlay(SelfPlay.readOpenings(book), args.get(0), Long.MAX_VALUE, nodes);
+		selfPlay.setFeeds(feeds);
+		Thread games = new Thread(() -> {
+			try {
+				selfPlay.run(count);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "ChessBot Self-Play");
+		games.setDaemon(true);
+		games.start();
+
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (now - lastFrame >= FRAME_NANOS) {
+					lastFrame = now;
+					drawFrame();
+				}
+			}
+		}.start();
+
+		StackPane root = new StackPane();
+		root.getChildren().add(canvas);
+		primaryStage.setTitle("ChessBot Self-Play");
+		primaryStage.setScene(new Scene(root));
+		primaryStage.show();
+	}
+
+	private void drawFrame() {
+		for (int i = 0; i < boards.length; i++) {
+			BoardFeed.Frame frame = feeds[i].get();
+			if (frame == null || frame == shown[i]) {
+				continue;
+			}
+			shown[i] = frame;
+			boards[i].setStones(frame.getStones());
+			boards[i].setLastMove(frame.getLastMove());
+			boards[i].render();
+
+			double x = boards[i].getX(0), y = boards[i].getY(0) + boards[i].getSquareSize();
+			graphics.clearRect(x, y, boards[i].getWidth(), STATUS_PIXELS);
+			graphics.setFill(Color.BLACK);
+			graphics.setFont(Font.font(11));
+			graphics.setTextAlign(TextAlignment.LEFT);
+			graphics.setTextBaseline(VPos.TOP);
+			graphics.fillText(frame.getStatus(), x + 2, y + 2);
+		}
+	}
+
+	// the games in progress are dropped, everything finished is already written
+	@Override
+	public void stop() {
+		if (selfPlay != null) {
+			selfPlay.stop();
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.chessbot.app;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// static exchange evaluation: plays out every capture and recapture on the
+// target square, cheapest attacker first, to find out whether a capture wins
+// or loses material without searching it
+public class StaticExchange {
+
+	// indexed by chesspresso piece, king is large so capturing it always ends the exchange
+	static final int[] VALUES = {0, 320, 330, 500, 900, 100, 20000};
+
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+	private static final long[] KING_ATTACKS = new long[64];
+	private static final long[][] PAWN_ATTACKERS = new long[2][64];
+
+	// column and row steps for the rook and bishop rays
+	private static final int[][] ORTHOGONAL = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+	private static final int[][] DIAGONAL = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+	static {
+		int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+		for(int sqi = 0; sqi < 64; sqi++){
+			int col = Chess.sqiToCol(sqi);
+			int row = Chess.sqiToRow(sqi);
+
+			for(int[] step : knightSteps){
+				KNIGHT_ATTACKS[sqi] |= bit(col + step[0], row + step[1]);
+			}
+			for(int dc = -1; dc <= 1; dc++){
+				for(int dr = -1; dr <= 1; dr++){
+					if(dc != 0 || dr != 0) KING_ATTACKS[sqi] |= bit(col + dc, row + dr);
+				}
+			}
+
+			// white pawns attack upwards, so they sit one row below the square
+			PAWN_ATTACKERS[Chess.WHITE][sqi] = bit(col - 1, row - 1) | bit(col + 1, row - 1);
+			PAWN_ATTACKERS[Chess.BLACK][sqi] = bit(col - 1, row + 1) | bit(col + 1, row + 1);
+		}
+	}
+
+	private int[] stones;
+	private int[] gain;
+	private long occupied;
+
+	// squares of each stone, offset so the negative white stones fit
+	private long[] stoneSquares;
+
+	public StaticExchange(){
+		stones = new int[64];
+		gain = new int[32];
+		stoneSquares = new long[Chess.MAX_STONE - Chess.MIN_STONE + 1];
+	}
+
+	private static long bit(int col, int row){
+		if(col < 0 || col > 7 || row < 0 || row > 7){
+			return 0;
+		}
+		return 1L << Chess.coorToSqi(col, row);
+	}
+
+	// copy the board once, after which any number of captures can be evaluated
+	public void setPosition(Position position){
+		occupied = 0;
+		Arrays.fill(stoneSquares, 0);
+		for(int sqi = 0; sqi < 64; sqi++){
+			stones[sqi] = position.getStone(sqi);
+			if(stones[sqi] != Chess.NO_STONE){
+				occupied |= 1L << sqi;
+				stoneSquares[stones[sqi] - Chess.MIN_STONE] |= 1L << sqi;
+			}
+		}
+	}
+
+	// material the side to move wins (or loses, if negative) by making the capture
+	// and then both sides recapturing on the square for as long as it pays
+	public int evaluate(short move){
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+		int attacker = stones[fromSqi];
+		int color = Chess.stoneToColor(attacker);
+		long occupancy = occupied;
+
+		gain[0] = VALUES[Chess.stoneToPiece(stones[toSqi])];
+		if(Move.isEPMove(move)){
+			// the captured pawn isn't on the target square
+			gain[0] = VALUES[Chess.PAWN];
+			occupancy ^= 1L << Chess.coorToSqi(Chess.sqiToCol(toSqi), Chess.sqiToRow(fromSqi));
+		}
+
+		int onSquare = VALUES[Chess.stoneToPiece(attacker)];
+		if(Move.isPromotion(move)){
+			onSquare = VALUES[Move.getPromotionPiece(move)];
+			gain[0] += onSquare - VALUES[Chess.PAWN];
+		}
+		occupancy ^= 1L << fromSqi;
+
+		int depth = 0;
+		while(depth < gain.length - 1){
+			color = Chess.otherPlayer(color);
+
+			// sliders behind the pieces that already captured join in, since the
+			// occupancy no longer contains those pieces
+			int sqi = getLeastValuableAttacker(toSqi, color, occupancy);
+			if(sqi < 0){
+				break;
+			}
+
+			depth++;
+			gain[depth] = onSquare - gain[depth-1];
+			onSquare = VALUES[Chess.stoneToPiece(stones[sqi])];
+			occupancy ^= 1L << sqi;
+		}
+
+		// each side can stop capturing whenever continuing would lose material
+		while(depth > 0){
+			gain[depth-1] = -Math.max(-gain[depth-1], gain[depth]);
+			depth--;
+		}
+		return gain[0];
+	}
+
+	private int getLeastValuableAttacker(int toSqi, int color, long occupancy){
+		long attackers = getAttackers(toSqi, color, occupancy);
+		int best = -1;
+		for(long bits = attackers; bits != 0; bits &= bits - 1){
+			int sqi = Long.numberOfTrailingZeros(bits);
+			if(best < 0 || VALUES[Chess.stoneToPiece(stones[sqi])] < VALUES[Chess.stoneToPiece(stones[best])]){
+				best = sqi;
+			}
+		}
+		return best;
+	}
+
+	// every piece of color on an occupied square that attacks the target square
+	private long getAttackers(int toSqi, int color, long occupancy){
+		long attackers = 0;
+		int col = Chess.sqiToCol(toSqi);
+		int row = Chess.sqiToRow(toSqi);
+
+		attackers |= PAWN_ATTACKERS[color][toSqi] & pieces(Chess.PAWN, color);
+		attackers |= KNIGHT_ATTACKS[toSqi] & pieces(Chess.KNIGHT, color);
+		attackers |= KING_ATTACKS[toSqi] & pieces(Chess.KING, color);
+		attackers |= slide(col, row, ORTHOGONAL, occupancy) & (pieces(Chess.ROOK, color) | pieces(Chess.QUEEN, color));
+		attackers |= slide(col, row, DIAGONAL, occupancy) & (pieces(Chess.BISHOP, color) | pieces(Chess.QUEEN, color));
+
+		return attackers & occupancy;
+	}
+
+	// the first occupied square along each ray
+	private long slide(int col, int row, int[][] directions, long occupancy){
+		long blockers = 0;
+		for(int[] direction : directions){
+			int c = col + direction[0];
+			int r = row + direction[1];
+			while(c >= 0 && c < 8 && r >= 0 && r < 8){
+				long square = 1L << Chess.coorToSqi(c, r);
+				if((occupancy & square) != 0){
+					blockers |= square;
+					break;
+				}
+				c += direction[0];
+				r += direction[1];
+			}
+		}
+		return blockers;
+	}
+
+	// pieces that were captured during the exchange are masked out by the occupancy
+	private long pieces(int piece, int color){
+		return stoneSquares[Chess.pieceToStone(piece, color) - Chess.MIN_STONE];
+	}
+
+}
@@ -0,0 +1,338 @@
+package com.chessbot.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+// tunes the evaluation weights on positions from played games: the evaluation,
+// squashed into a winning chance, should predict the result of the game each
+// position came from, and the weights are moved down the gradient of the squared
+// error. the evaluation is a sum of weight times term count, so the term counts
+// of every position are worked out once up front and each pass over them is
+// plain arithmetic on flat arrays, split over all cores without allocating
+// usage: TexelTuner extract [--append] <out.bin> <games.pgn>...
+//        TexelTuner tune <data.bin> [epochs] [threads]
+public class TexelTuner {
+
+	// the material weights of KillerAI.getMaterialValue, then the pawn structure
+	// terms of the pawn hash table and the king shield
+	private static final String[] NAMES = {"pawn", "knight", "bishop", "rook", "queen",
+			"doubled", "isolated", "passed2", "passed3", "passed4", "passed5", "passed6", "passed7", "shield"};
+	private static final int MATERIAL = 0;
+	private static final int PAWN_TERMS = 5;
+	private static final int SHIELD = PAWN_TERMS + PawnHashTable.TERMS;
+	private static final int FEATURES = SHIELD + 1;
+
+	// chesspresso piece to material feature
+	private static final int[] PIECE_FEATURE = {-1, 1, 2, 3, 4, 0, -1};
+
+	// the first plies of a game are mostly book moves and say little about the result
+	private static final int SKIP_PLIES = 8;
+
+	private static final double LEARNING_RATE = 1.0;
+
+	// the positions as sparse rows of feature index and count
+	private int size;
+	private int[] start;
+	private byte[] feature, count;
+	private byte[] result;
+
+	private double[] weights;
+	private double scale;
+
+	private int threads;
+	private ExecutorService workers;
+	private List<Slice> slices;
+
+	public static void main(String[] args) throws Exception {
+		// the output is replaced unless --append adds to it
+		boolean append = args.length >= 2 && args[1].equals("--append");
+		int out = append ? 2 : 1;
+		if(args.length >= out + 2 && args[0].equals("extract")){
+			extract(args[out], Arrays.copyOfRange(args, out + 1, args.length), append);
+		}
+		else if(args.length >= 2 && args[0].equals("tune")){
+			int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+			int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+			TexelTuner tuner = new TexelTuner(threads);
+			tuner.load(args[1]);
+			tuner.tune(epochs);
+			tuner.shutdown();
+		}
+		else{
+			System.err.println("usage: TexelTuner extract [--append] <out.bin> <games.pgn>...\n"
+					+ "       TexelTuner tune <data.bin> [epochs] [threads]");
+			System.exit(1);
+		}
+	}
+
+	// write the quiet positions of every finished game to a training file, after
+	// the positions already in it with append
+	public static void extract(String out, String[] pgnFiles, boolean append) throws IOException {
+		StaticExchange exchange = new StaticExchange();
+		long games = 0;
+
+		try(TrainingFile.Writer writer = new TrainingFile.Writer(out, append)){
+			for(String file : pgnFiles){
+				try(PGNStream pgn = new PGNStream(file)){
+					// the result comes from the Result tag, which is read before the moves
+					pgn.forEachPosition((game, position, move, ply) -> {
+						int result = TrainingFile.fromGameResult(game.getResult());
+						if(result >= 0 && ply >= SKIP_PLIES && isQuiet(position, move, exchange)){
+							try{
+								writer.write(position, result, 0);
+							}
+							catch(IOException e){
+								throw new UncheckedIOException(e);
+							}
+						}
+					}, false);
+					games += pgn.getGames();
+				}
+			}
+			System.out.println("Games: " + games + "\nPositions: " + writer.getCount());
+		}
+	}
+
+	// the static evaluation is only meaningful where no capture is about to
+	// change the material, so skip checks, captures and winning exchanges
+	private static boolean isQuiet(Position position, short next, StaticExchange exchange){
+		if(position.isCheck() || Move.isCapturing(next) || Move.isPromotion(next)){
+			return false;
+		}
+		exchange.setPosition(position);
+		for(short capture : position.getAllCapturingMoves()){
+			if(exchange.evaluate(capture) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public TexelTuner(int threads){
+		this.threads = threads;
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.weights = new double[FEATURES];
+
+		// start from the weights the engine uses now
+		int[] pawnWeights = PawnHashTable.getTermWeights();
+		double[] material = {100, 320, 330, 500, 900};
+		System.arraycopy(material, 0, weights, MATERIAL, material.length);
+		for(int i = 0; i < pawnWeights.length; i++){
+			weights[PAWN_TERMS + i] = pawnWeights[i];
+		}
+		weights[SHIELD] = PawnHashTable.getShieldWeight();
+	}
+
+	public void load(String file) throws IOException {
+		long records = new File(file).length() / TrainingFile.RECORD_BYTES;
+		if(records > Integer.MAX_VALUE / FEATURES){
+			throw new IOException("Too many positions in " + file + ": " + records);
+		}
+		start = new int[(int) records + 1];
+		result = new byte[(int) records];
+		feature = new byte[(int) records * 8];
+		count = new byte[feature.length];
+
+		byte[] record = new byte[TrainingFile.RECORD_BYTES];
+		int[] terms = new int[FEATURES];
+		int entries = 0;
+		size = 0;
+
+		try(TrainingFile.Reader reader = new TrainingFile.Reader(file)){
+			while(size < records && reader.next(record)){
+				countTerms(record, terms);
+
+				if(entries + FEATURES > feature.length){
+					feature = Arrays.copyOf(feature, feature.length * 2);
+					count = Arrays.copyOf(count, feature.length);
+				}
+				start[size] = entries;
+				for(int i = 0; i < FEATURES; i++){
+					if(terms[i] != 0){
+						feature[entries] = (byte) i;
+						count[entries] = (byte) terms[i];
+						entries++;
+					}
+				}
+				result[size++] = (byte) TrainingFile.getResult(record);
+			}
+		}
+		start[size] = entries;
+
+		// split the positions evenly between the threads
+		slices = new ArrayList<Slice>();
+		for(int i = 0; i < threads; i++){
+			slices.add(new Slice((int) ((long) size * i / threads), (int) ((long) size * (i + 1) / threads)));
+		}
+		System.out.println("Positions: " + size + "\nTerms per position: " + (double) entries / Math.max(size, 1));
+	}
+
+	// every term as white's count minus black's
+	private static void countTerms(byte[] record, int[] terms){
+		Arrays.fill(terms, 0);
+		long whitePawns = 0, blackPawns = 0;
+		int whiteKing = 0, blackKing = 0;
+
+		for(int sqi = 0; sqi < 64; sqi++){
+			int stone = TrainingFile.getStone(record, sqi);
+			if(stone == Chess.NO_STONE){
+				continue;
+			}
+			if(stone == Chess.WHITE_PAWN) whitePawns |= 1L << sqi;
+			if(stone == Chess.BLACK_PAWN) blackPawns |= 1L << sqi;
+			if(stone == Chess.WHITE_KING) whiteKing = sqi;
+			if(stone == Chess.BLACK_KING) blackKing = sqi;
+
+			int material = PIECE_FEATURE[Chess.stoneToPiece(stone)];
+			if(material >= 0){
+				terms[MATERIAL + material] += Chess.stoneToColor(stone) == Chess.WHITE ? 1 : -1;
+			}
+		}
+
+		PawnHashTable.countTerms(whitePawns, blackPawns, terms, PAWN_TERMS);
+		terms[SHIELD] = PawnHashTable.countShield(whiteKing, Chess.WHITE, whitePawns)
+				- PawnHashTable.countShield(blackKing, Chess.BLACK, blackPawns);
+	}
+
+	public void tune(int epochs) throws Exception {
+		long begin = System.currentTimeMillis();
+		fitScale();
+		System.out.println("Scale: " + scale * 400 / Math.log(10) + "\nStarting error: " + error(false));
+
+		// adam, so terms that are rarely nonzero still move at a useful rate
+		double[] gradient = new double[FEATURES];
+		double[] moment = new double[FEATURES];
+		double[] velocity = new double[FEATURES];
+		double beta1 = 0.9, beta2 = 0.999;
+
+		for(int epoch = 1; epoch <= epochs; epoch++){
+			double error = error(true);
+			Arrays.fill(gradient, 0);
+			for(Slice slice : slices){
+				for(int i = 0; i < FEATURES; i++){
+					gradient[i] += slice.gradient[i];
+				}
+			}
+
+			for(int i = 0; i < FEATURES; i++){
+				moment[i] = beta1 * moment[i] + (1 - beta1) * gradient[i];
+				velocity[i] = beta2 * velocity[i] + (1 - beta2) * gradient[i] * gradient[i];
+				double correctedMoment = moment[i] / (1 - Math.pow(beta1, epoch));
+				double correctedVelocity = velocity[i] / (1 - Math.pow(beta2, epoch));
+				weights[i] -= LEARNING_RATE * correctedMoment / (Math.sqrt(correctedVelocity) + 1e-8);
+			}
+
+			if(epoch % 50 == 0 || epoch == epochs){
+				long elapsed = Math.max(System.currentTimeMillis() - begin, 1);
+				System.out.println("Epoch " + epoch + " error " + error
+						+ " positions/s " + (long) ((double) size * epoch * 1000 / elapsed));
+			}
+		}
+
+		System.out.println("\nFinal error: " + error(false));
+		for(int i = 0; i < FEATURES; i++){
+			System.out.println(NAMES[i] + " " + Math.round(weights[i]));
+		}
+	}
+
+	// the scale turning centipawns into a winning chance that fits the data best,
+	// found once with the starting weights and then held fixed
+	private void fitScale() throws Exception {
+		double low = 0.0001, high = 0.02;
+		for(int i = 0; i < 40; i++){
+			double a = low + (high - low) / 3, b = high - (high - low) / 3;
+			scale = a;
+			double errorA = error(false);
+			scale = b;
+			double errorB = error(false);
+			if(errorA < errorB){
+				high = b;
+			}
+			else{
+				low = a;
+			}
+		}
+		scale = (low + high) / 2;
+	}
+
+	// mean squared error over all positions, and the gradient in each slice if asked
+	private double error(boolean gradient) throws Exception {
+		for(Slice slice : slices){
+			slice.gradient(gradient);
+		}
+		double sum = 0;
+		for(Future<Double> part : workers.invokeAll(slices)){
+			sum += part.get();
+		}
+		if(gradient){
+			for(Slice slice : slices){
+				for(int i = 0; i < FEATURES; i++){
+					slice.gradient[i] /= size;
+				}
+			}
+		}
+		return sum / size;
+	}
+
+	public void shutdown(){
+		workers.shutdown();
+	}
+
+	// the positions one thread works through, with its own gradient so the
+	// threads never write to shared memory
+	private class Slice implements Callable<Double> {
+
+		private int from, to;
+		private boolean computeGradient;
+		private double[] gradient;
+
+		private Slice(int from, int to){
+			this.from = from;
+			this.to = to;
+			this.gradient = new double[FEATURES];
+		}
+
+		private void gradient(boolean compute){
+			computeGradient = compute;
+		}
+
+		public Double call(){
+			double[] weights = TexelTuner.this.weights;
+			double error = 0;
+			Arrays.fill(gradient, 0);
+
+			for(int p = from; p < to; p++){
+				double eval = 0;
+				for(int e = start[p]; e < start[p + 1]; e++){
+					eval += weights[feature[e]] * count[e];
+				}
+				double predicted = 1 / (1 + Math.exp(-scale * eval));
+				double difference = result[p] * 0.5 - predicted;
+				error += difference * difference;
+
+				if(computeGradient){
+					// derivative of the squared error through the sigmoid
+					double slope = -2 * difference * predicted * (1 - predicted) * scale;
+					for(int e = start[p]; e < start[p + 1]; e++){
+						gradient[feature[e]] += slope * count[e];
+					}
+				}
+			}
+			return error;
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.chessbot.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import chesspresso.Chess;
+import chesspresso.position.Position;
+
+// compact binary file of training positions, each record is a fixed 36 bytes:
+// the board as 64 nibbles holding the stone plus 8, the side to move, the game
+// result in half points for white, and an optional score in centipawns for white
+public class TrainingFile {
+
+	static final int RECORD_BYTES = 36;
+
+	static final int BLACK_WINS = 0;
+	static final int DRAW = 1;
+	static final int WHITE_WINS = 2;
+
+	private static final int TO_PLAY = 32;
+	private static final int RESULT = 33;
+	private static final int SCORE = 34;
+
+	// the result of a finished chesspresso game, or -1 if it has none
+	static int fromGameResult(int result){
+		switch(result){
+			case Chess.RES_WHITE_WINS: return WHITE_WINS;
+			case Chess.RES_DRAW: return DRAW;
+			case Chess.RES_BLACK_WINS: return BLACK_WINS;
+			default: return -1;
+		}
+	}
+
+	static void encode(Position position, int result, int score, byte[] record){
+		encode(position, result, score, record, 0);
+	}
+
+	// encode into the record starting at offset of a larger array
+	static void encode(Position position, int result, int score, byte[] records, int offset){
+		for(int sqi = 0; sqi < 64; sqi += 2){
+			int low = position.getStone(sqi) + 8;
+			int high = position.getStone(sqi + 1) + 8;
+			records[offset + sqi / 2] = (byte) (low | (high << 4));
+		}
+		records[offset + TO_PLAY] = (byte) position.getToPlay();
+		records[offset + RESULT] = (byte) result;
+		score = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+		records[offset + SCORE] = (byte) (score >> 8);
+		records[offset + SCORE + 1] = (byte) score;
+	}
+
+	static void setResult(byte[] records, int offset, int result){
+		records[offset + RESULT] = (byte) result;
+	}
+
+	static int getStone(byte[] record, int sqi){
+		int nibbles = record[sqi / 2];
+		return ((sqi & 1) == 0 ? nibbles & 0xF : (nibbles >> 4) & 0xF) - 8;
+	}
+
+	static int getToPlay(byte[] record){ return record[TO_PLAY]; }
+	static int getResult(byte[] record){ return record[RESULT]; }
+	static int getScore(byte[] record){ return (short) ((record[SCORE] << 8) | (record[SCORE + 1] & 0xFF)); }
+
+	public static class Writer implements Closeable {
+
+		private BufferedOutputStream out;
+		private byte[] record;
+		private long count;
+
+		public Writer(String file, boolean append) throws IOException {
+			out = new BufferedOutputStream(new FileOutputStream(file, append), 1 << 16);
+			record = new byte[RECORD_BYTES];
+		}
+
+		public void write(Position position, int result, int score) throws IOException {
+			encode(position, result, score, record);
+			out.write(record);
+			count++;
+		}
+
+		// the first count records encoded into records
+		public void write(byte[] records, int count) throws IOException {
+			out.write(records, 0, count * RECORD_BYTES);
+			this.count += count;
+		}
+
+		public long getCount(){ return count; }
+
+		public void close() throws IOException {
+			out.close();
+		}
+
+	}
+
+	// reads the records one at a time into the same array
+	public static class Reader implements Closeable {
+
+		private DataInputStream in;
+
+		public Reader(String file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		}
+
+		// false at the end of the file
+		public boolean next(byte[] record) throws IOException {
+			try{
+				in.readFully(record, 0, RECORD_BYTES);
+				return true;
+			}
+			catch(EOFException e){
+				return false;
+			}
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+}
@@ -106,12 +106,12 @@ public class TransAI implements ChessAI {
 		
 		int value, max = -Integer.MAX_VALUE;
 		
-		// if it is checkmate, you lose!
-		if(position.isMate()){
+		// if there are no moves it is checkmate or stalemate
+		short [] moves = position.getAllMoves();
+		if(moves.length == 0){
 			return 0;
 		}
 		
-		short [] moves = position.getAllMoves();
 		short bestMove = moves[new Random().nextInt(moves.length)];
 		
 		for(short move : moves){
@@ -148,16 +148,6 @@ public class TransAI implements ChessAI {
 		nodesExplored++;
 		int min = Integer.MAX_VALUE;
 		
-		// if checkmate, the AI won
-		if(position.isMate()){
-			return Integer.MAX_VALUE;
-		}
-		
-		// stalemate is always 0
-		if(position.isStaleMate()){
-			return 0;
-		}
-		
 		// try to get existing value from transposition table
 		if(transposition.containsKey(position.getHashCode())){
 			// we only want high quality values, depends on how much depth is left
@@ -178,15 +168,26 @@ public class TransAI implements ChessAI {
 			}
 		}
 		
-		// don't make a move if you're in to deep
+		// don't make a move if you're in to deep, only look for checkmate
+		// or stalemate if there is no legal move at all
 		if(depth == 0){
+			if(!position.canMove()){
+				return position.isCheck() ? Integer.MAX_VALUE : 0;
+			}
 			return getMaterialValue(position);
 		}
 		
+		// the moves are only generated once, if there are none then being
+		// in check is checkmate (AI won) and otherwise it is stalemate
+		short[] moves = position.getAllMoves();
+		if(moves.length == 0){
+			return position.isCheck() ? Integer.MAX_VALUE : 0;
+		}
+		
 		try{
-
+			
 			// try to get the min of the possible moves by recursing with getMaxValue
-			for(short move : position.getAllMoves()){
+			for(short move : moves){
 				// the user makes a move
 				position.doMove(move);
 				min = Math.min(min, getMaxValue(position, alpha, beta, depth-1));
@@ -226,16 +227,6 @@ public class TransAI implements ChessAI {
 		nodesExplored++;
 		int max = -Integer.MAX_VALUE;
 		
-		// if checkmate, the AI lost
-		if(position.isMate()){
-			return -Integer.MAX_VALUE;
-		}
-		
-		// stalemate is always 0
-		if(position.isStaleMate()){
-			return 0;
-		}
-		
 		// try to get existing value from transposition table
 		if(transposition.containsKey(position.getHashCode())){
 			// we only want high quality values, depends on how much depth is left
@@ -256,15 +247,26 @@ public class TransAI implements ChessAI {
 			}
 		}
 		
-		// don't make a move if you're in to deep
+		// don't make a move if you're in to deep, only look for checkmate
+		// or stalemate if there is no legal move at all
 		if(depth == 0){
+			if(!position.canMove()){
+				return position.isCheck() ? -Integer.MAX_VALUE : 0;
+			}
 			return getMaterialValue(position);
 		}
 		
+		// the moves are only generated once, if there are none then being
+		// in check is checkmate (AI lost) and otherwise it is stalemate
+		short[] moves = position.getAllMoves();
+		if(moves.length == 0){
+			return position.isCheck() ? -Integer.MAX_VALUE : 0;
+		}
+		
 		try{
 			
 			// try to get the max of the possible moves by recursing with getMinValue
-			for(short move : position.getAllMoves()){
+			for(short move : moves){
 				position.doMove(move);
 				max = Math.max(max, getMinValue(position, alpha, beta, depth-1));
 				position.undoMove();
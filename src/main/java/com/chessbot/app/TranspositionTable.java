@@ -0,0 +1,143 @@
+package com.chessbot.app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// fixed size transposition table kept off the heap in direct buffers, so even
+// tables of several gigabytes add nothing to garbage collection
+// each entry keeps the full 64 bit hash code to verify a hit, mixed with the
+// table's generation so clearing it only has to start a new generation
+// the buffers count against -XX:MaxDirectMemorySize, which is the heap size
+// unless it is set, so a large table with a small heap needs it set too
+public class TranspositionTable {
+
+	static final int LOWER = -1;
+	static final int EXACT = 0;
+	static final int UPPER = 1;
+
+	// key, value, best move, depth and bound
+	static final int ENTRY_BYTES = 16;
+	private static final int VALUE = 8;
+	private static final int MOVE = 12;
+	private static final int DEPTH = 14;
+	private static final int BOUND = 15;
+
+	// a single direct buffer is limited to 2GB, so large tables are split up
+	private static final int SEGMENT_SHIFT = 30 - 4;
+	private static final long SEGMENT_ENTRIES = 1L << SEGMENT_SHIFT;
+
+	// spreads the generations over all 64 bits of the stored keys
+	private static final long GENERATION_MIX = 0x9E3779B97F4A7C15L;
+
+	private ByteBuffer[] segments;
+	private long mask;
+	private int sizeMB, pendingSizeMB;
+	private long probes, hits;
+
+	// xor'ed into every stored key, so entries of an older generation never match
+	private long generation;
+
+	public TranspositionTable(int sizeMB){
+		this.pendingSizeMB = sizeMB;
+		allocate();
+	}
+
+	// the table is rounded down to a power of two entries
+	private void allocate(){
+		sizeMB = pendingSizeMB;
+		long entries = Long.highestOneBit(Math.max((long) sizeMB * 1024 * 1024 / ENTRY_BYTES, 1));
+		mask = entries - 1;
+
+		int count = (int) ((entries + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES);
+		segments = new ByteBuffer[count];
+		for(int i = 0; i < count; i++){
+			long size = Math.min(entries - i * SEGMENT_ENTRIES, SEGMENT_ENTRIES) * ENTRY_BYTES;
+			segments[i] = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	// a new size only takes effect at the next clear, which happens between searches
+	public void resize(int sizeMB){
+		pendingSizeMB = sizeMB;
+	}
+
+	public int getSizeMB(){ return sizeMB; }
+
+	// empties the table in constant time, whatever its size, the old entries
+	// stay in place but can't match a key again
+	public void clear(){
+		generation += GENERATION_MIX;
+		if(pendingSizeMB != sizeMB){
+			// the old buffers' native memory is only freed once they are garbage
+			// collected, until then both tables count against the direct memory limit
+			segments = null;
+			allocate();
+		}
+	}
+
+	private ByteBuffer segment(long index){
+		return segments[(int) (index >>> SEGMENT_SHIFT)];
+	}
+
+	private int offset(long index){
+		return (int) (index & (SEGMENT_ENTRIES - 1)) * ENTRY_BYTES;
+	}
+
+	// returns the slot holding key, or -1 if it isn't in the table
+	public long probe(long key){
+		probes++;
+		long slot = find(key);
+		if(slot >= 0){
+			hits++;
+		}
+		return slot;
+	}
+
+	// probe without counting it, for reading the table outside the search
+	public long find(long key){
+		long index = key & mask;
+		return segment(index).getLong(offset(index)) == (key ^ generation) ? index : -1;
+	}
+
+	public int getValue(long slot){ return segment(slot).getInt(offset(slot) + VALUE); }
+	public short getMove(long slot){ return segment(slot).getShort(offset(slot) + MOVE); }
+	public int getDepth(long slot){ return segment(slot).get(offset(slot) + DEPTH); }
+	public int getBound(long slot){ return segment(slot).get(offset(slot) + BOUND); }
+
+	// newer entries always replace older ones in the same slot
+	public void store(long key, int depth, int value, int bound, short move){
+		long index = key & mask;
+		ByteBuffer segment = segment(index);
+		int offset = offset(index);
+		segment.putLong(offset, key ^ generation);
+		segment.putInt(offset + VALUE, value);
+		segment.putShort(offset + MOVE, move);
+		segment.put(offset + DEPTH, (byte) depth);
+		segment.put(offset + BOUND, (byte) bound);
+	}
+
+	// an entry from another engine's table, kept unless this table already has
+	// the same position searched at least as deeply
+	public void offer(long key, int depth, int value, int bound, short move){
+		long index = key & mask;
+		ByteBuffer segment = segment(index);
+		int offset = offset(index);
+		if(segment.getLong(offset) == (key ^ generation) && segment.get(offset + DEPTH) >= depth){
+			return;
+		}
+		store(key, depth, value, bound, move);
+	}
+
+	public long getProbes(){ return probes; }
+	public long getHits(){ return hits; }
+
+	public double getHitRate(){
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	public void resetStats(){
+		probes = 0;
+		hits = 0;
+	}
+
+}